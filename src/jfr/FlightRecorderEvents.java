@@ -0,0 +1,220 @@
+package jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import main.CodingEvents;
+
+/**
+ * The Flight Recorder events of {@link CodingEvents}.
+ * This is the only class that needs the jdk.jfr module (JDK 11 or later, or 8u262 or later),
+ * and it is only loaded by {@link CodingEvents} when the module is there,
+ * so the rest of the project builds and runs without it.
+ *
+ * @see CodingEvents
+ * @version 1.0
+ * @author 150009974
+ */
+public final class FlightRecorderEvents implements CodingEvents.Recorder {
+
+    private static final String CATEGORY = "Compression";
+
+    @Name("main.Estimate")
+    @Label("Model Estimation")
+    @Description("Counting the symbols of a text into an InformationSource")
+    @Category(CATEGORY)
+    static final class Estimate extends Event {
+
+        @Label("Text Length")
+        @Description("The characters counted")
+        int textLength;
+
+        @Label("Symbols")
+        int symbols;
+
+    }
+
+    @Name("main.Build")
+    @Label("Model Construction")
+    @Description("Building a Huffman tree or the Arithmetic intervals")
+    @Category(CATEGORY)
+    static final class Build extends Event {
+
+        @Label("Technique")
+        String technique;
+
+        @Label("Symbols")
+        @Description("The symbols of the model, with the EOD")
+        int symbols;
+
+        @Label("Base")
+        int base;
+
+    }
+
+    @Name("main.Encode")
+    @Label("Encode")
+    @Category(CATEGORY)
+    static final class Encode extends Event {
+
+        @Label("Technique")
+        String technique;
+
+        @Label("Characters")
+        int characters;
+
+        @Label("Code Length")
+        @Description("The digits of the code")
+        int codeLength;
+
+    }
+
+    @Name("main.Decode")
+    @Label("Decode")
+    @Category(CATEGORY)
+    static final class Decode extends Event {
+
+        @Label("Technique")
+        String technique;
+
+        @Label("Code Length")
+        @Description("The digits of the code")
+        int codeLength;
+
+        @Label("Characters")
+        int characters;
+
+    }
+
+    @Name("main.FileRead")
+    @Label("File Read")
+    @Description("Reading the text of a file, parsing it if it is a PDF")
+    @Category(CATEGORY)
+    static final class FileRead extends Event {
+
+        @Label("Path")
+        String path;
+
+        @Label("File Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Characters")
+        int characters;
+
+        @Label("PDF")
+        boolean pdf;
+
+    }
+
+    @Name("main.FileWrite")
+    @Label("File Write")
+    @Category(CATEGORY)
+    static final class FileWrite extends Event {
+
+        @Label("Path")
+        String path;
+
+        @Label("Written")
+        @DataAmount
+        long bytes;
+
+    }
+
+    private static <E extends Event> E begin(E event) {
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public Object beginEstimate() {
+        return begin(new Estimate());
+    }
+
+    @Override
+    public Object beginBuild() {
+        return begin(new Build());
+    }
+
+    @Override
+    public Object beginEncode() {
+        return begin(new Encode());
+    }
+
+    @Override
+    public Object beginDecode() {
+        return begin(new Decode());
+    }
+
+    @Override
+    public Object beginFileRead() {
+        return begin(new FileRead());
+    }
+
+    @Override
+    public Object beginFileWrite() {
+        return begin(new FileWrite());
+    }
+
+    @Override
+    public boolean shouldCommit(Object event) {
+        return ((Event) event).shouldCommit();
+    }
+
+    @Override
+    public void commitEstimate(Object event, int textLength, int symbols) {
+        Estimate estimate = (Estimate) event;
+        estimate.textLength = textLength;
+        estimate.symbols = symbols;
+        estimate.commit();
+    }
+
+    @Override
+    public void commitBuild(Object event, String technique, int symbols, int base) {
+        Build build = (Build) event;
+        build.technique = technique;
+        build.symbols = symbols;
+        build.base = base;
+        build.commit();
+    }
+
+    @Override
+    public void commitEncode(Object event, String technique, int characters, int codeLength) {
+        Encode encode = (Encode) event;
+        encode.technique = technique;
+        encode.characters = characters;
+        encode.codeLength = codeLength;
+        encode.commit();
+    }
+
+    @Override
+    public void commitDecode(Object event, String technique, int codeLength, int characters) {
+        Decode decode = (Decode) event;
+        decode.technique = technique;
+        decode.codeLength = codeLength;
+        decode.characters = characters;
+        decode.commit();
+    }
+
+    @Override
+    public void commitFileRead(Object event, String path, long bytes, int characters, boolean pdf) {
+        FileRead fileRead = (FileRead) event;
+        fileRead.path = path;
+        fileRead.bytes = bytes;
+        fileRead.characters = characters;
+        fileRead.pdf = pdf;
+        fileRead.commit();
+    }
+
+    @Override
+    public void commitFileWrite(Object event, String path, long bytes) {
+        FileWrite fileWrite = (FileWrite) event;
+        fileWrite.path = path;
+        fileWrite.bytes = bytes;
+        fileWrite.commit();
+    }
+
+}
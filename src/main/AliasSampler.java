@@ -0,0 +1,78 @@
+package main;
+
+import java.util.SplittableRandom;
+
+/**
+ * Draws symbols with given probabilities in constant time, with Walker's alias method
+ * (built in linear time as described by Vose).
+ * Every one of the n columns holds a symbol and possibly an alias, so that a uniform column
+ * and a uniform threshold within it select a symbol with exactly its probability.
+ * Once built the sampler is never changed, so it can be used by several threads at once.
+ *
+ * @see InformationSource#generateText(int, long)
+ * @see ChunkedGenerator
+ * @version 1.0
+ * @author 150009974
+ */
+final class AliasSampler implements ChunkedGenerator.Filler {
+
+    private final char[] symbols;
+    /**
+     * The probability of keeping the symbol of a column rather than taking its alias.
+     */
+    private final double[] threshold;
+    private final char[] alias;
+
+    /**
+     * @param symbols the symbols
+     * @param probabilities their probabilities, positive, scaled to add up to 1
+     */
+    AliasSampler(char[] symbols, double[] probabilities) {
+        int n = symbols.length;
+        this.symbols = symbols.clone();
+        this.threshold = new double[n];
+        this.alias = this.symbols.clone();
+
+        double sum = 0;
+        for (double p : probabilities) sum += p;
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smalls = 0, larges = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = probabilities[i] * n / sum;
+            if (scaled[i] < 1.0) small[smalls++] = i;
+            else large[larges++] = i;
+        }
+
+        while (smalls > 0 && larges > 0) {
+            int less = small[--smalls];
+            int more = large[--larges];
+            this.threshold[less] = scaled[less];
+            this.alias[less] = this.symbols[more];
+            scaled[more] -= 1.0 - scaled[less];
+            if (scaled[more] < 1.0) small[smalls++] = more;
+            else large[larges++] = more;
+        }
+        // Whatever is left has a probability of 1 up to rounding.
+        while (larges > 0) this.threshold[large[--larges]] = 1.0;
+        while (smalls > 0) this.threshold[small[--smalls]] = 1.0;
+    }
+
+    /**
+     * @param random the source of randomness
+     * @return a symbol drawn with its probability
+     */
+    char sample(SplittableRandom random) {
+        // One double gives both the column (integer part) and the threshold (fractional part).
+        double roll = random.nextDouble() * this.symbols.length;
+        int column = Math.min((int) roll, this.symbols.length - 1);  // In case the product rounds up.
+        return roll - column < this.threshold[column] ? this.symbols[column] : this.alias[column];
+    }
+
+    @Override
+    public void fill(char[] buffer, int from, int to, SplittableRandom random) {
+        for (int i = from; i < to; i++) buffer[i] = this.sample(random);
+    }
+
+}
@@ -12,12 +12,18 @@ import static java.lang.Math.pow;
  * Creates {@link Interval}s to which the symbols belong.
  * The code is constructed by continuously subdividing an interval
  * and finally taking the lower bound (the start of the interval).
+ * The intervals are fixed when it is created, and every call keeps its own state in a session,
+ * so one instance can code in many threads at once.
+ * Builds, coding calls and rescales are counted in the "arithmetic" {@link CoderMetrics}, or those of the technique using it,
+ * and recorded as {@link CodingEvents} when Flight Recorder is on.
  *
  * @see CompressionTechnique
  * @see Interval
  * @see InformationSource
  * @see InformationSourceEntry
  * @see Arithmetic#sourceLL
+ * @see CoderMetrics
+ * @see CodingEvents
  * @author 150009974
  */
 public class Arithmetic extends CompressionTechnique {
@@ -147,39 +153,76 @@ public class Arithmetic extends CompressionTechnique {
     }
     
     private static final int BITS_TO_LOOK_AT = Long.SIZE -1;
+    private static final CoderMetrics METRICS = CoderMetrics.forTechnique("arithmetic");
     /**
      * This {@link LinkedList} contains the elements of an {@link InformationSource}.
      * It can be iterated in the correct order
      * unlike the {@link InformationSource#entries} {@link java.util.PriorityQueue}
      */
-    private LinkedList<InformationSourceEntry> sourceLL;
-    private HashMap<Character, String> symbolRange = new HashMap<>();
-    
-    private String tag = "";  // For both encoding and decoding.
-    private long rescaleCounter = 0;  // For encoding.
-    private int nextBitOfTag = 0;  // For decoding.
-    private InformationSourceEntry eod;  // For decoding.
-    private long value;  // For decoding.
-    
+    private final LinkedList<InformationSourceEntry> sourceLL;
+    private final HashMap<Character, String> symbolRange = new HashMap<>();
+    private final InformationSourceEntry eod;  // For decoding.
+    private final CoderMetrics metrics;
+    private final double entropy;
+
+    /**
+     * The state of a single call to {@link Arithmetic#encode(String)} or {@link Arithmetic#decode(String)}.
+     * Keeping it out of the {@link Arithmetic} fields lets several threads code with the same instance.
+     * Every thread reuses its own session, so coding many short messages does not create one per message.
+     */
+    private static final class Session {
+
+        private StringBuilder tag;  // For encoding.
+        private long rescaleCounter = 0;  // For encoding.
+        private long rescales, underflows;  // For encoding, added to the metrics once per call.
+        private CharSequence coded;  // For decoding.
+        private int nextBitOfTag = 0;  // For decoding.
+        private long value;  // For decoding.
+
+    }
+
+    private static final ThreadLocal<Session> SESSIONS = ThreadLocal.withInitial(Session::new);
+
     private static Interval getDefaultInterval() {
         return new Interval(0, (long)pow(2, BITS_TO_LOOK_AT)-1);
     }
 
+    /**
+     * @param model the frozen entries and EOD to code with
+     * @throws Exception if there is no EOD
+     */
+    public Arithmetic(SourceSnapshot model) throws Exception {
+        this(model.toLinkedList(), model.getEOD());
+    }
+
     public Arithmetic(LinkedList<InformationSourceEntry> source, InformationSourceEntry eod) throws Exception {
+        this(source, eod, METRICS);
+    }
+
+    /**
+     * @param metrics where to count the builds and coding calls, when the code works for another technique
+     */
+    Arithmetic(LinkedList<InformationSourceEntry> source, InformationSourceEntry eod, CoderMetrics metrics) throws Exception {
         
-        this.sourceLL = source;
-        this.eod = eod;
+        this.metrics = metrics;
+        Object event = CodingEvents.beginBuild();
+        long start = System.nanoTime();
         if (eod == null)
             throw new Exception("Can not do Arithmetic Coding without End Of Data Symbol!");
+        // The probabilities are adjusted below, so work on copies of the entries.
+        this.sourceLL = new LinkedList<>();
+        for (InformationSourceEntry entry : source)
+            this.sourceLL.addLast(new InformationSourceEntry(entry.getSymbol(), entry.getProbability()));
+        this.eod = new InformationSourceEntry(eod.getSymbol(), eod.getProbability());
 
         // Smallest probability/2
         double smallestProbability = sourceLL.peekLast().getProbability();
         int N = sourceLL.size();
-        sourceLL.addLast(eod);  // List size is now N +1
-        eod.setProbability(smallestProbability/sourceLL.size());
+        sourceLL.addLast(this.eod);  // List size is now N +1
+        this.eod.setProbability(smallestProbability/sourceLL.size());
         
         // Sum of probabilities is now 1+smallest/(N+1).
-        double delta = eod.getProbability() / (N + 1);
+        double delta = this.eod.getProbability() / (N + 1);
         
         double p = 0.0;
         for (InformationSourceEntry entry : sourceLL) {
@@ -191,9 +234,16 @@ public class Arithmetic extends CompressionTechnique {
             symbolRange.put(entry.getSymbol(), range);
         }
 
-        eod.setProbability(eod.getProbability()+1.0-p);
+        this.eod.setProbability(this.eod.getProbability()+1.0-p);
 
         // Back to probability sum of 1.
+        double[] probabilities = new double[sourceLL.size()];
+        int i = 0;
+        for (InformationSourceEntry entry : sourceLL) probabilities[i++] = entry.getProbability();
+        this.entropy = CoderMetrics.entropy(probabilities);
+        this.metrics.recordBuild(System.nanoTime() - start);
+        if (CodingEvents.shouldCommit(event))
+            CodingEvents.commitBuild(event, "arithmetic", probabilities.length, 2);
     }
     
     @Override
@@ -217,7 +267,7 @@ public class Arithmetic extends CompressionTechnique {
         return number&endWithOnes;
     }
     
-    private Interval encodeRescale(Interval in) {
+    private Interval encodeRescale(Session session, Interval in) {
         long lower = in.getStart();
         long upper = in.getEnd();
         while (true) {
@@ -225,12 +275,13 @@ public class Arithmetic extends CompressionTechnique {
             char MSB = getBit(lower, 1);
             char notMSB = notBit(MSB);
             if (MSB == getBit(upper, 1)) {
-                tag += MSB;
-                for (; rescaleCounter > 0; rescaleCounter --) tag += notMSB;
+                session.tag.append(MSB);
+                for (; session.rescaleCounter > 0; session.rescaleCounter --) session.tag.append(notMSB);
 
                 lower = getLastBits(lower<<1);
                 upper = getLastBits(upper<<1);
                 upper |= 1;
+                session.rescales ++;
 
             }
             
@@ -245,7 +296,8 @@ public class Arithmetic extends CompressionTechnique {
                 lower ^= (long)pow(2,BITS_TO_LOOK_AT-1);
                 upper ^= (long)pow(2,BITS_TO_LOOK_AT-1);
                 
-                rescaleCounter ++;
+                session.rescaleCounter ++;
+                session.underflows ++;
 
             }
             
@@ -253,34 +305,62 @@ public class Arithmetic extends CompressionTechnique {
         }
     }
     
-    private void finishEncoding(long lower) {
+    private void finishEncoding(Session session, long lower) {
         char MSB = getBit(lower, 1);
         char notMSB = notBit(MSB);
-        tag += MSB;
-        for (; rescaleCounter > 0; rescaleCounter --) tag += notMSB;
+        session.tag.append(MSB);
+        for (; session.rescaleCounter > 0; session.rescaleCounter --) session.tag.append(notMSB);
 
         long B_1 = BITS_TO_LOOK_AT-1;
         long ones = (long)pow(2,B_1)-1;
         String lastBits = Long.toBinaryString(lower&ones);
         for (int i = BITS_TO_LOOK_AT-1 - lastBits.length(); i > 0; i --)
-            tag += "0";
-        tag += lastBits;
+            session.tag.append('0');
+        session.tag.append(lastBits);
     }
     
     @Override
     public String encode(String text) {
+        StringBuilder tag = new StringBuilder();
+        this.encode(text, false, tag);
+        return tag.toString();
+    }
+
+    /**
+     * Codes the message followed by the EOD, so that the decoder knows where it ends.
+     * Every message also ends with the {@link Arithmetic#BITS_TO_LOOK_AT} bits of its lower bound,
+     * which short messages pay for each time they are framed on their own.
+     */
+    @Override
+    protected void encodeTo(CharSequence text, StringBuilder out) {
+        this.encode(text, true, out);
+    }
+
+    private void encode(CharSequence text, boolean withEOD, StringBuilder out) {
+        Object event = CodingEvents.beginEncode();
+        long start = System.nanoTime();
+        int bits = out.length();
+        Session session = SESSIONS.get();
+        session.tag = out;
+        session.rescaleCounter = 0;
+        session.rescales = 0;
+        session.underflows = 0;
         Interval current = getDefaultInterval();
-        tag = "";
         char c;
         for (int i = 0; i < text.length(); i++) {
             c = text.charAt(i);
-            current = encodeRescale(current.encodeSub(sourceLL, c));
+            current = encodeRescale(session, current.encodeSub(sourceLL, c));
         }
-        finishEncoding(current.getStart());
-        return tag;
+        if (withEOD) current = encodeRescale(session, current.encodeSub(sourceLL, eod.getSymbol()));
+        finishEncoding(session, current.getStart());
+        session.tag = null;
+        this.metrics.recordEncode(System.nanoTime() - start, text.length(), out.length() - bits, this.entropy, 0.0);
+        this.metrics.recordRescales(session.rescales, session.underflows);
+        if (CodingEvents.shouldCommit(event))
+            CodingEvents.commitEncode(event, "arithmetic", text.length(), out.length() - bits);
     }
     
-    private Interval decodeRescale(Interval in) {
+    private Interval decodeRescale(Session session, Interval in) {
         long lower = in.getStart();
         long upper = in.getEnd();
         while (true) {
@@ -292,8 +372,8 @@ public class Arithmetic extends CompressionTechnique {
                 upper = getLastBits(upper<<1);
                 upper |= 1;
                 
-                value = getLastBits(value<<1);
-                value |= (tag.charAt(nextBitOfTag++) - '0');
+                session.value = getLastBits(session.value<<1);
+                session.value |= (session.coded.charAt(session.nextBitOfTag++) - '0');
 
             }
             
@@ -303,15 +383,13 @@ public class Arithmetic extends CompressionTechnique {
                 lower = getLastBits(lower<<1);
                 upper = getLastBits(upper<<1);
                 upper |= 1;
-                value = getLastBits(value<<1);
-                value |= (tag.charAt(nextBitOfTag++) - '0');
+                session.value = getLastBits(session.value<<1);
+                session.value |= (session.coded.charAt(session.nextBitOfTag++) - '0');
                 
                 // Flip MSB
                 lower ^= (long)pow(2,BITS_TO_LOOK_AT-1);
                 upper ^= (long)pow(2,BITS_TO_LOOK_AT-1);
-                value ^= (long)pow(2,BITS_TO_LOOK_AT-1);
-                
-                rescaleCounter ++;
+                session.value ^= (long)pow(2,BITS_TO_LOOK_AT-1);
 
             }
             
@@ -321,25 +399,44 @@ public class Arithmetic extends CompressionTechnique {
     
     @Override
     public String decode(String text) {
-        
-        value = Long.parseLong(tag.substring(0, BITS_TO_LOOK_AT), 2);
-        tag = text;
-        nextBitOfTag = BITS_TO_LOOK_AT;
         StringBuilder output = new StringBuilder();
+        this.decode(text, 0, text.length(), true, output);
+        return output.toString();
+    }
+
+    @Override
+    protected void decodeTo(CharSequence coded, int from, int to, StringBuilder out) {
+        this.decode(coded, from, to, false, out);
+    }
+
+    private void decode(CharSequence coded, int from, int to, boolean withEOD, StringBuilder output) {
+        
+        Object event = CodingEvents.beginDecode();
+        int characters = output.length();
+        long start = System.nanoTime();
+        Session session = SESSIONS.get();
+        session.coded = coded;
+        session.value = TokenCoder.readBits(coded, from, BITS_TO_LOOK_AT);
+        session.nextBitOfTag = from + BITS_TO_LOOK_AT;
         Interval current = getDefaultInterval();
         
         while (true) {
 
-            current = current.decodeSub(sourceLL, value);
+            current = current.decodeSub(sourceLL, session.value);
             char symbol = current.getAssociatedSymbol();
+            if (symbol == eod.getSymbol()) {
+                if (withEOD) output.append(symbol);
+                break;
+            }
             output.append(symbol);
-            if (symbol == eod.getSymbol()) break;
-            current = decodeRescale(current);
-            if (nextBitOfTag == tag.length()) break;
+            current = decodeRescale(session, current);
+            if (session.nextBitOfTag == to) break;
 
         }
-        
-        return output.toString();
+        session.coded = null;
+        this.metrics.recordDecode(System.nanoTime() - start);
+        if (CodingEvents.shouldCommit(event))
+            CodingEvents.commitDecode(event, "arithmetic", to - from, output.length() - characters);
         
     }
 
@@ -0,0 +1,175 @@
+package main;
+
+/**
+ * An integer implementation of the {@link Arithmetic} coding algorithm.
+ * Instead of subdividing an {@link Arithmetic} interval with double probabilities,
+ * each step receives a symbol's cumulative frequency range and the total frequency.
+ * This makes it suitable for adaptive models, whose frequencies change after every symbol.
+ * The same rescaling rules as in {@link Arithmetic} are used:
+ * Rescale A when the most significant bits match and
+ * Rescale B when the interval straddles the middle (underflow).
+ * The tag is a {@link String} of '0' and '1' characters, like the other techniques produce.
+ * One instance is either an encoder or a decoder, and is used for a single message.
+ *
+ * @see Arithmetic
+ * @see ArithmeticCoder#encode(int, int, int)
+ * @see ArithmeticCoder#decode(int, int, int)
+ * @version 1.0
+ * @author 150009974
+ */
+final class ArithmeticCoder {
+
+    private static final int BITS = 32;
+    private static final long TOP = (1L << BITS) - 1;
+    private static final long HALF = 1L << (BITS - 1);
+    private static final long QUARTER = 1L << (BITS - 2);
+    /**
+     * The largest total frequency that can be coded.
+     * With the interval never smaller than a quarter,
+     * every symbol with a non-zero frequency gets a non-empty subinterval.
+     */
+    static final int MAX_TOTAL = 1 << (BITS - 2);
+
+    private long lower = 0;
+    private long upper = TOP;
+    private long rescaleCounter = 0;  // For encoding.
+    private final StringBuilder tag;  // For encoding.
+
+    private final String coded;  // For decoding.
+    private int nextBitOfTag;  // For decoding.
+    private long value;  // For decoding.
+
+    private ArithmeticCoder(StringBuilder tag, String coded, int from) {
+        this.tag = tag;
+        this.coded = coded;
+        this.nextBitOfTag = from;
+        if (coded != null) {
+            for (int i = 0; i < BITS; i++)
+                this.value = (this.value << 1) | this.nextBit();
+        }
+    }
+
+    /**
+     * Creates an encoder that appends the tag to the given {@link StringBuilder}.
+     *
+     * @param tag where the bits of the code are written
+     * @return a new encoder
+     */
+    static ArithmeticCoder encoder(StringBuilder tag) {
+        return new ArithmeticCoder(tag, null, 0);
+    }
+
+    /**
+     * Creates a decoder that reads the given tag from the given position onwards.
+     * Reading beyond the end of the tag yields zeros.
+     *
+     * @param coded the tag produced by an encoder
+     * @param from the index of the first bit of the tag
+     * @return a new decoder
+     */
+    static ArithmeticCoder decoder(String coded, int from) {
+        return new ArithmeticCoder(null, coded, from);
+    }
+
+    private long nextBit() {
+        if (this.nextBitOfTag >= this.coded.length()) {
+            this.nextBitOfTag++;
+            return 0;
+        }
+        return this.coded.charAt(this.nextBitOfTag++) - '0';
+    }
+
+    private void emit(char bit) {
+        char notBit = bit == '0' ? '1' : '0';
+        this.tag.append(bit);
+        for (; this.rescaleCounter > 0; this.rescaleCounter--) this.tag.append(notBit);
+    }
+
+    private void narrow(int low, int high, int total) {
+        long range = this.upper - this.lower + 1;
+        this.upper = this.lower + range * high / total - 1;
+        this.lower = this.lower + range * low / total;
+    }
+
+    /**
+     * Encodes a symbol occupying the frequencies [low; high) out of total.
+     *
+     * @param low the cumulative frequency of all symbols before this one
+     * @param high low plus the frequency of this symbol
+     * @param total the sum of all frequencies, at most {@link ArithmeticCoder#MAX_TOTAL}
+     */
+    void encode(int low, int high, int total) {
+        this.narrow(low, high, total);
+        while (true) {
+            // Rescale A:
+            if (this.upper < HALF) this.emit('0');
+            else if (this.lower >= HALF) {
+                this.emit('1');
+                this.lower -= HALF;
+                this.upper -= HALF;
+            }
+            // Rescale B:
+            else if (this.lower >= QUARTER && this.upper < HALF + QUARTER) {
+                this.rescaleCounter++;
+                this.lower -= QUARTER;
+                this.upper -= QUARTER;
+            }
+            else return;
+            this.lower <<= 1;
+            this.upper = (this.upper << 1) | 1;
+        }
+    }
+
+    /**
+     * Writes enough bits to identify the final interval.
+     * Must be called once, after the last symbol is encoded.
+     */
+    void finish() {
+        this.rescaleCounter++;
+        this.emit(this.lower < QUARTER ? '0' : '1');
+    }
+
+    /**
+     * Finds the cumulative frequency, which the next symbol's range contains.
+     * Must be followed by {@link ArithmeticCoder#decode(int, int, int)}
+     * with the range of the symbol which contains the returned value.
+     *
+     * @param total the sum of all frequencies
+     * @return a value in [0; total)
+     */
+    int getTarget(int total) {
+        long range = this.upper - this.lower + 1;
+        return (int) (((this.value - this.lower + 1) * total - 1) / range);
+    }
+
+    /**
+     * Removes the symbol occupying the frequencies [low; high) out of total from the tag.
+     *
+     * @param low the cumulative frequency of all symbols before the decoded one
+     * @param high low plus the frequency of the decoded symbol
+     * @param total the sum of all frequencies
+     */
+    void decode(int low, int high, int total) {
+        this.narrow(low, high, total);
+        while (true) {
+            // Rescale A:
+            if (this.upper < HALF) { /* Nothing to subtract. */ }
+            else if (this.lower >= HALF) {
+                this.lower -= HALF;
+                this.upper -= HALF;
+                this.value -= HALF;
+            }
+            // Rescale B:
+            else if (this.lower >= QUARTER && this.upper < HALF + QUARTER) {
+                this.lower -= QUARTER;
+                this.upper -= QUARTER;
+                this.value -= QUARTER;
+            }
+            else return;
+            this.lower <<= 1;
+            this.upper = (this.upper << 1) | 1;
+            this.value = (this.value << 1) | this.nextBit();
+        }
+    }
+
+}
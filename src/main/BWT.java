@@ -0,0 +1,273 @@
+package main;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The Burrows-Wheeler transform followed by move-to-front, zero run length encoding
+ * and an entropy coder, like bzip2.
+ * The text is split into blocks, which are transformed independently and in parallel.
+ * The transform of a block is the last column of the sorted rotations of the block,
+ * obtained from its {@link SuffixArray}. It groups symbols with similar contexts together,
+ * so move-to-front turns it into mostly small numbers and runs of zeros.
+ * Runs of zeros are written in bijective base 2 with the digits {@link BWT#RUN_A} and {@link BWT#RUN_B}.
+ * The resulting tokens of all blocks are coded with {@link Huffman} or {@link Arithmetic}
+ * through a {@link TokenCoder}. The coded text is laid out as: the number of blocks (32 bits),
+ * the primary index of every block (32 bits each) and the entropy coded tokens.
+ * An empty text has no blocks and no tokens, so it is coded as the number of blocks alone.
+ * Like {@link Arithmetic}, the models built while encoding are kept for decoding.
+ *
+ * @see SuffixArray
+ * @see TokenCoder
+ * @version 1.1
+ * @author 150009974
+ */
+public class BWT extends CompressionTechnique {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+    private static final int FIELD = Integer.SIZE;
+    private static final int RUN_A = 0;
+    private static final int RUN_B = 1;
+
+    private final int blockSize;
+    private final String backEnd;
+
+    // Built while encoding, used while decoding.
+    private TokenCoder tokenCoder;
+    /**
+     * The distinct characters of the text in increasing order.
+     * Blocks are transformed over their indexes in this array.
+     */
+    private char[] alphabet = new char[0];
+
+    /**
+     * The output of the transform of one block.
+     */
+    private static class Block {
+        final int primary;
+        final String tokens;
+
+        Block(int primary, String tokens) {
+            this.primary = primary;
+            this.tokens = tokens;
+        }
+    }
+
+    /**
+     * @param blockSize the number of characters transformed together
+     * @param backEnd the entropy coder, "huffman" or "arithmetic"
+     * @throws Exception if the block size is not positive or the coder is unknown
+     */
+    public BWT(int blockSize, String backEnd) throws Exception {
+        if (blockSize <= 0) throw new Exception("BWT block size must be positive!");
+        if (!backEnd.equals("huffman") && !backEnd.equals("arithmetic"))
+            throw new Exception("Unknown entropy coder: " + backEnd);
+        this.blockSize = blockSize;
+        this.backEnd = backEnd;
+    }
+
+    public BWT(String backEnd) throws Exception {
+        this(DEFAULT_BLOCK_SIZE, backEnd);
+    }
+
+    /**
+     * @return the token that ends a block, one more than the largest move-to-front token
+     */
+    private int endOfBlock() {
+        return this.alphabet.length + 1;
+    }
+
+    private void findAlphabet(String text) {
+        boolean[] present = new boolean[Character.MAX_VALUE + 1];
+        int size = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (!present[text.charAt(i)]) size++;
+            present[text.charAt(i)] = true;
+        }
+        this.alphabet = new char[size];
+        for (int c = 0, i = 0; i < size; c++)
+            if (present[c]) this.alphabet[i++] = (char) c;
+    }
+
+    private static void appendRun(StringBuilder tokens, int run) {
+        while (run > 0) {
+            if ((run & 1) == 1) {
+                tokens.append((char) RUN_A);
+                run = (run - 1) >> 1;
+            }
+            else {
+                tokens.append((char) RUN_B);
+                run = (run - 2) >> 1;
+            }
+        }
+    }
+
+    /**
+     * Transforms a single block. Safe to call from several threads at once.
+     *
+     * @param text the whole text
+     * @param from the first index of the block
+     * @param to one after the last index of the block
+     * @return the primary index and the tokens of the block
+     */
+    private Block transform(String text, int from, int to) {
+        int n = to - from;
+
+        // Symbols are 1 + their index in the alphabet, 0 is the sentinel.
+        int[] s = new int[n + 1];
+        for (int i = 0; i < n; i++)
+            s[i] = 1 + Arrays.binarySearch(this.alphabet, text.charAt(from + i));
+        int[] sa = SuffixArray.build(s, this.alphabet.length + 1);
+
+        int[] mtf = new int[this.alphabet.length];
+        for (int i = 0; i < mtf.length; i++) mtf[i] = i;
+
+        StringBuilder tokens = new StringBuilder();
+        int primary = 0;
+        int run = 0;
+        for (int i = 0; i <= n; i++) {
+            if (sa[i] == 0) {
+                primary = i;  // The row ending with the sentinel is not written.
+                continue;
+            }
+
+            int symbol = s[sa[i] - 1] - 1;
+            int index = 0;
+            while (mtf[index] != symbol) index++;
+            System.arraycopy(mtf, 0, mtf, 1, index);
+            mtf[0] = symbol;
+
+            if (index == 0) {
+                run++;
+                continue;
+            }
+            appendRun(tokens, run);
+            run = 0;
+            tokens.append((char) (index + 1));
+        }
+        appendRun(tokens, run);
+        tokens.append((char) this.endOfBlock());
+
+        return new Block(primary, tokens.toString());
+    }
+
+    /**
+     * Reverses {@link BWT#transform(String, int, int)}. Safe to call from several threads at once.
+     *
+     * @param tokens the tokens of the block, without the end of block token
+     * @param primary the primary index of the block
+     * @return the characters of the block
+     */
+    private char[] inverse(String tokens, int primary) {
+        int[] mtf = new int[this.alphabet.length];
+        for (int i = 0; i < mtf.length; i++) mtf[i] = i;
+
+        // The last column, with the sentinel (-1) put back at the primary index.
+        int[] last = new int[tokens.length() * 2 + 1];
+        int n = 0;
+        for (int i = 0; i < tokens.length(); ) {
+            int token = tokens.charAt(i);
+            if (token == RUN_A || token == RUN_B) {
+                int run = 0;
+                for (int weight = 1; i < tokens.length() && tokens.charAt(i) <= RUN_B; weight <<= 1, i++)
+                    run += tokens.charAt(i) == RUN_A ? weight : 2*weight;
+                if (n + run + 1 > last.length) last = Arrays.copyOf(last, Math.max(last.length*2, n + run + 1));
+                for (; run > 0; run--) {
+                    if (n == primary) last[n++] = -1;
+                    last[n++] = mtf[0];
+                }
+                continue;
+            }
+
+            int index = token - 1;
+            int symbol = mtf[index];
+            System.arraycopy(mtf, 0, mtf, 1, index);
+            mtf[0] = symbol;
+            if (n + 2 > last.length) last = Arrays.copyOf(last, last.length*2);
+            if (n == primary) last[n++] = -1;
+            last[n++] = symbol;
+            i++;
+        }
+        if (n == primary) last[n++] = -1;
+
+        // Last-to-first mapping: the occurrence of a symbol in the last column
+        // is the same occurrence of it in the first column.
+        int[] first = new int[this.alphabet.length + 1];
+        for (int i = 0; i < n; i++) first[last[i] + 1]++;
+        for (int c = 0, sum = 0; c < first.length; c++) {
+            int count = first[c];
+            first[c] = sum;
+            sum += count;
+        }
+        int[] lf = new int[n];
+        for (int i = 0; i < n; i++) lf[i] = first[last[i] + 1]++;
+
+        char[] block = new char[n - 1];
+        for (int k = n-2, row = 0; k >= 0; k--) {
+            block[k] = this.alphabet[last[row]];
+            row = lf[row];
+        }
+        return block;
+    }
+
+    @Override
+    public String getCoding(char symbol) {
+        return "";
+    }
+
+    @Override
+    public String encode(String text) {
+        this.findAlphabet(text);
+        if (this.endOfBlock() > Character.MAX_VALUE)
+            throw new IllegalArgumentException("Too many distinct characters for BWT!");
+
+        int blocks = (text.length() + this.blockSize - 1) / this.blockSize;
+        Block[] transformed = IntStream.range(0, blocks).parallel()
+                .mapToObj(b -> this.transform(text, b*this.blockSize, Math.min(text.length(), (b+1)*this.blockSize)))
+                .toArray(Block[]::new);
+
+        StringBuilder output = new StringBuilder();
+        StringBuilder tokens = new StringBuilder();
+        TokenCoder.appendBits(output, blocks, FIELD);
+        if (blocks == 0) {
+            // Nothing for an entropy coder to model.
+            this.tokenCoder = null;
+            return output.toString();
+        }
+        for (Block block : transformed) {
+            TokenCoder.appendBits(output, block.primary, FIELD);
+            tokens.append(block.tokens);
+        }
+
+        try {
+            this.tokenCoder = new TokenCoder(tokens.toString(), this.backEnd, "bwt");
+        }
+        catch (Exception ex) {
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+        return output.append(this.tokenCoder.encode(tokens.toString())).toString();
+    }
+
+    @Override
+    public String decode(String coded) {
+        int blocks = (int) TokenCoder.readBits(coded, 0, FIELD);
+        if (blocks == 0) return "";
+        String tokens = this.tokenCoder.decode(coded.substring(FIELD * (blocks+1)));
+
+        String[] blockTokens = new String[blocks];
+        for (int b = 0, from = 0; b < blocks; b++) {
+            int to = tokens.indexOf(this.endOfBlock(), from);
+            blockTokens[b] = tokens.substring(from, to);
+            from = to + 1;
+        }
+
+        char[][] decoded = IntStream.range(0, blocks).parallel()
+                .mapToObj(b -> this.inverse(blockTokens[b], (int) TokenCoder.readBits(coded, FIELD * (b+1), FIELD)))
+                .toArray(char[][]::new);
+
+        StringBuilder text = new StringBuilder();
+        for (char[] block : decoded) text.append(block);
+        return text.toString();
+    }
+
+}
@@ -0,0 +1,95 @@
+package main;
+
+/**
+ * Adaptive arithmetic coding of the text as a sequence of binary decisions.
+ * Every character is decomposed into its 16 bits, most significant first,
+ * and each bit is coded with a {@link BinaryCoder} using the probability stored
+ * at its node of a binary tree, so every bit is conditioned on the bits before it in the character.
+ * Before every character, a flag bit tells whether the text goes on, which replaces the End Of Data symbol.
+ * The probabilities start at one half and adapt as the text is coded, so no model has to be estimated,
+ * built or written in the coded text, and both encoding and decoding are a single pass.
+ * The coded bytes are returned as a {@link String} of '0' and '1', 8 per byte.
+ *
+ * @see BinaryCoder
+ * @version 1.0
+ * @author 150009974
+ */
+public class BinaryArithmetic extends CompressionTechnique {
+
+    private static final int SYMBOL_BITS = Character.SIZE;
+    /**
+     * The tree uses the indices from 1 to 2^16-1, so index 0 is free for the flag bit.
+     */
+    private static final int FLAG = 0;
+    private static final int MORE = 0;
+    private static final int END = 1;
+
+    private static short[] newModel() {
+        short[] probabilities = new short[1 << SYMBOL_BITS];
+        BinaryCoder.initialise(probabilities);
+        return probabilities;
+    }
+
+    /**
+     * Encodes the text into bytes.
+     *
+     * @param text the text to encode
+     * @return the coded bytes
+     */
+    byte[] encodeBytes(CharSequence text) {
+        short[] probabilities = newModel();
+        BinaryCoder coder = BinaryCoder.encoder();
+        for (int i = 0; i < text.length(); i++) {
+            coder.encodeBit(probabilities, FLAG, MORE);
+            int symbol = text.charAt(i);
+            int node = 1;
+            for (int b = SYMBOL_BITS - 1; b >= 0; b--) {
+                int bit = (symbol >>> b) & 1;
+                coder.encodeBit(probabilities, node, bit);
+                node = (node << 1) | bit;
+            }
+        }
+        coder.encodeBit(probabilities, FLAG, END);
+        return coder.finish();
+    }
+
+    /**
+     * Decodes bytes written by {@link BinaryArithmetic#encodeBytes(CharSequence)}.
+     *
+     * @param coded the coded bytes
+     * @return the text
+     */
+    String decodeBytes(byte[] coded) {
+        short[] probabilities = newModel();
+        BinaryCoder coder = BinaryCoder.decoder(coded, 0);
+        StringBuilder text = new StringBuilder();
+        while (coder.decodeBit(probabilities, FLAG) == MORE) {
+            int node = 1;
+            for (int b = 0; b < SYMBOL_BITS; b++) node = (node << 1) | coder.decodeBit(probabilities, node);
+            text.append((char) (node - (1 << SYMBOL_BITS)));
+        }
+        return text.toString();
+    }
+
+    /**
+     * The code of a symbol changes as the probabilities adapt, so there is no fixed coding.
+     *
+     * @param symbol any symbol
+     * @return an empty {@link String}
+     */
+    @Override
+    public String getCoding(char symbol) {
+        return "";
+    }
+
+    @Override
+    public String encode(String text) {
+        return BinaryCoder.toBits(this.encodeBytes(text));
+    }
+
+    @Override
+    public String decode(String coded) {
+        return this.decodeBytes(BinaryCoder.toBytes(coded));
+    }
+
+}
@@ -0,0 +1,233 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * A binary arithmetic (range) coder, like the one in LZMA.
+ * Every decision is a single bit, coded with an adaptive probability that the bit is 0.
+ * Probabilities have {@link BinaryCoder#PROBABILITY_BITS} bits and are updated
+ * by shifting, so the coder only uses 32 bit integer additions, shifts and one multiplication per bit.
+ * The range is kept between 2^24 and 2^32 by writing out the top byte,
+ * and carries are propagated through the cached byte and the run of 0xFF bytes after it.
+ * One instance is either an encoder or a decoder, and is used for a single message.
+ *
+ * @see BinaryArithmetic
+ * @version 1.0
+ * @author 150009974
+ */
+final class BinaryCoder {
+
+    static final int PROBABILITY_BITS = 12;
+    static final int PROBABILITY_ONE = 1 << PROBABILITY_BITS;
+    /**
+     * Every probability starts at one half.
+     */
+    static final short PROBABILITY_INIT = PROBABILITY_ONE >> 1;
+    /**
+     * How quickly probabilities adapt. Each update moves a probability 1/2^MOVE_BITS of the way.
+     */
+    private static final int MOVE_BITS = 5;
+    private static final int TOP = 1 << 24;
+
+    private int range = 0xFFFFFFFF;
+
+    // For encoding.
+    private long low = 0;
+    private int cacheSize = 1;
+    private int cache = 0;
+    private byte[] output;
+    private int size = 0;
+
+    // For decoding.
+    private final byte[] input;
+    private int nextByte;
+    private int code = 0;
+
+    private BinaryCoder(byte[] input, int from) {
+        this.input = input;
+        this.nextByte = from;
+        if (input == null) {
+            this.output = new byte[1 << 10];
+            return;
+        }
+        for (int i = 0; i < 5; i++) this.code = (this.code << 8) | this.readByte();
+    }
+
+    static BinaryCoder encoder() {
+        return new BinaryCoder(null, 0);
+    }
+
+    /**
+     * @param input the bytes written by an encoder
+     * @param from the index of the first byte
+     * @return a new decoder
+     */
+    static BinaryCoder decoder(byte[] input, int from) {
+        return new BinaryCoder(input, from);
+    }
+
+    /**
+     * @param probabilities the array to fill
+     */
+    static void initialise(short[] probabilities) {
+        Arrays.fill(probabilities, PROBABILITY_INIT);
+    }
+
+    private int readByte() {
+        return this.nextByte < this.input.length ? this.input[this.nextByte++] & 0xFF : 0;
+    }
+
+    private void writeByte(int b) {
+        if (this.size == this.output.length) this.output = Arrays.copyOf(this.output, this.size * 2);
+        this.output[this.size++] = (byte) b;
+    }
+
+    private void shiftLow() {
+        if (this.low < 0xFF000000L || this.low > 0xFFFFFFFFL) {
+            int carry = (int) (this.low >>> 32);
+            int temp = this.cache;
+            do {
+                this.writeByte(temp + carry);
+                temp = 0xFF;
+            } while (--this.cacheSize != 0);
+            this.cache = (int) (this.low >>> 24) & 0xFF;
+        }
+        this.cacheSize++;
+        this.low = (this.low & 0x00FFFFFFL) << 8;
+    }
+
+    /**
+     * Encodes a bit and updates its probability.
+     *
+     * @param probabilities the adaptive probabilities of 0
+     * @param index the probability to use
+     * @param bit 0 or 1
+     */
+    void encodeBit(short[] probabilities, int index, int bit) {
+        int p = probabilities[index];
+        int bound = (this.range >>> PROBABILITY_BITS) * p;
+        if (bit == 0) {
+            this.range = bound;
+            probabilities[index] = (short) (p + ((PROBABILITY_ONE - p) >>> MOVE_BITS));
+        }
+        else {
+            this.low += bound & 0xFFFFFFFFL;
+            this.range -= bound;
+            probabilities[index] = (short) (p - (p >>> MOVE_BITS));
+        }
+        while (Integer.compareUnsigned(this.range, TOP) < 0) {
+            this.range <<= 8;
+            this.shiftLow();
+        }
+    }
+
+    /**
+     * Encodes a bit with a fixed probability that the bit is 0, without updating it.
+     * Used by models which compute their own probabilities.
+     *
+     * @param p the probability of 0, in (0; {@link BinaryCoder#PROBABILITY_ONE})
+     * @param bit 0 or 1
+     */
+    void encodeBit(int p, int bit) {
+        int bound = (this.range >>> PROBABILITY_BITS) * p;
+        if (bit == 0) this.range = bound;
+        else {
+            this.low += bound & 0xFFFFFFFFL;
+            this.range -= bound;
+        }
+        while (Integer.compareUnsigned(this.range, TOP) < 0) {
+            this.range <<= 8;
+            this.shiftLow();
+        }
+    }
+
+    /**
+     * Writes out the remaining bytes of the interval.
+     *
+     * @return the coded bytes
+     */
+    byte[] finish() {
+        for (int i = 0; i < 5; i++) this.shiftLow();
+        return Arrays.copyOf(this.output, this.size);
+    }
+
+    /**
+     * Decodes a bit and updates its probability, mirroring {@link BinaryCoder#encodeBit(short[], int, int)}.
+     *
+     * @param probabilities the adaptive probabilities of 0
+     * @param index the probability to use
+     * @return the bit
+     */
+    int decodeBit(short[] probabilities, int index) {
+        int p = probabilities[index];
+        int bound = (this.range >>> PROBABILITY_BITS) * p;
+        int bit;
+        if (Integer.compareUnsigned(this.code, bound) < 0) {
+            this.range = bound;
+            probabilities[index] = (short) (p + ((PROBABILITY_ONE - p) >>> MOVE_BITS));
+            bit = 0;
+        }
+        else {
+            this.code -= bound;
+            this.range -= bound;
+            probabilities[index] = (short) (p - (p >>> MOVE_BITS));
+            bit = 1;
+        }
+        while (Integer.compareUnsigned(this.range, TOP) < 0) {
+            this.range <<= 8;
+            this.code = (this.code << 8) | this.readByte();
+        }
+        return bit;
+    }
+
+    /**
+     * Decodes a bit with a fixed probability, mirroring {@link BinaryCoder#encodeBit(int, int)}.
+     *
+     * @param p the probability of 0, in (0; {@link BinaryCoder#PROBABILITY_ONE})
+     * @return the bit
+     */
+    int decodeBit(int p) {
+        int bound = (this.range >>> PROBABILITY_BITS) * p;
+        int bit;
+        if (Integer.compareUnsigned(this.code, bound) < 0) {
+            this.range = bound;
+            bit = 0;
+        }
+        else {
+            this.code -= bound;
+            this.range -= bound;
+            bit = 1;
+        }
+        while (Integer.compareUnsigned(this.range, TOP) < 0) {
+            this.range <<= 8;
+            this.code = (this.code << 8) | this.readByte();
+        }
+        return bit;
+    }
+
+    /**
+     * Writes bytes as a {@link String} of '0' and '1', like the other techniques produce.
+     *
+     * @param bytes the bytes
+     * @return 8 bits per byte, most significant first
+     */
+    static String toBits(byte[] bytes) {
+        StringBuilder bits = new StringBuilder(bytes.length * Byte.SIZE);
+        for (byte b : bytes) TokenCoder.appendBits(bits, b & 0xFF, Byte.SIZE);
+        return bits.toString();
+    }
+
+    /**
+     * Reverses {@link BinaryCoder#toBits(byte[])}.
+     *
+     * @param bits 8 bits per byte
+     * @return the bytes
+     */
+    static byte[] toBytes(String bits) {
+        byte[] bytes = new byte[bits.length() / Byte.SIZE];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) TokenCoder.readBits(bits, i * Byte.SIZE, Byte.SIZE);
+        return bytes;
+    }
+
+}
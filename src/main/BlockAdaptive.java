@@ -0,0 +1,315 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Splits the text into segments with different symbol statistics and codes each one on its own,
+ * with a Huffman table, an arithmetic model, or as it is (raw), whichever is shortest.
+ * The text is scanned in windows of a fixed size. A window joins the current segment
+ * unless coding it with its own model would save more bits than the cost of a new table.
+ * That cost comparison only touches the symbols of the window,
+ * as it is kept up to date through the sum of c*log(c) over the counts c.
+ * Unlike {@link Huffman} and {@link Arithmetic}, the models are written in the coded text.
+ * The coded text starts with the number of segments (32 bits), followed by the segments.
+ * Every segment starts with its mode (2 bits) and length (32 bits), followed by its table and code.
+ *
+ * @see BlockAdaptive#segment(String)
+ * @see CanonicalCode
+ * @see ArithmeticCoder
+ * @version 1.0
+ * @author 150009974
+ */
+public class BlockAdaptive extends CompressionTechnique {
+
+    public static final int DEFAULT_WINDOW = 1 << 12;
+
+    private static final int RAW = 0;
+    private static final int HUFFMAN = 1;
+    private static final int ARITHMETIC = 2;
+    private static final int MODE_FIELD = 2;
+    private static final int FIELD = Integer.SIZE;
+    private static final int SYMBOL_COUNT_FIELD = Character.SIZE + 1;
+    private static final int LENGTH_FIELD = 5;
+    private static final int MAX_CODE_LENGTH = (1 << LENGTH_FIELD) - 1;
+    private static final int COUNT_FIELD = Character.SIZE;
+    private static final int MAX_COUNT_TOTAL = 1 << COUNT_FIELD;
+    /**
+     * Approximate number of bits in a table per symbol, used when deciding to split.
+     */
+    private static final int TABLE_BITS_PER_SYMBOL = Character.SIZE + LENGTH_FIELD;
+
+    private final int window;
+
+    /**
+     * @param window the number of characters between two possible splits
+     * @throws Exception if the window is not positive
+     */
+    public BlockAdaptive(int window) throws Exception {
+        if (window <= 0) throw new Exception("Window size must be positive!");
+        this.window = window;
+    }
+
+    public BlockAdaptive() throws Exception {
+        this(DEFAULT_WINDOW);
+    }
+
+    private static double cLogC(double c) {
+        return c == 0 ? 0.0 : c * Math.log(c);
+    }
+
+    /**
+     * @param n the number of symbols
+     * @param sumCLogC the sum of c*log(c) over the counts of the symbols
+     * @return the number of bits needed to code the symbols with their own model
+     */
+    private static double cost(double n, double sumCLogC) {
+        return (cLogC(n) - sumCLogC) / Math.log(2);
+    }
+
+    /**
+     * Finds where the statistics of the text change.
+     * Each window is compared with the current segment: the cost of coding them with one model
+     * against the cost of coding them with separate models plus the cost of a table.
+     *
+     * @param text the text to split
+     * @return the start of every segment, followed by the length of the text (if not empty)
+     */
+    int[] segment(String text) {
+        int[] segmentCounts = new int[Character.MAX_VALUE + 1];
+        int[] windowCounts = new int[Character.MAX_VALUE + 1];
+        char[] windowSymbols = new char[this.window];
+
+        ArrayList<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        int segmentLength = 0;
+        double segmentCLogC = 0.0;
+
+        for (int from = 0; from < text.length(); from += this.window) {
+            int to = Math.min(text.length(), from + this.window);
+            int distinct = 0;
+            for (int i = from; i < to; i++) {
+                char c = text.charAt(i);
+                if (windowCounts[c]++ == 0) windowSymbols[distinct++] = c;
+            }
+
+            double windowCLogC = 0.0;
+            double mergedCLogC = segmentCLogC;
+            for (int i = 0; i < distinct; i++) {
+                char c = windowSymbols[i];
+                windowCLogC += cLogC(windowCounts[c]);
+                mergedCLogC += cLogC(segmentCounts[c] + windowCounts[c]) - cLogC(segmentCounts[c]);
+            }
+
+            int length = to - from;
+            double merged = cost(segmentLength + length, mergedCLogC);
+            double separate = cost(segmentLength, segmentCLogC) + cost(length, windowCLogC)
+                    + TABLE_BITS_PER_SYMBOL * distinct;
+
+            if (segmentLength != 0 && separate < merged) {
+                starts.add(from);
+                Arrays.fill(segmentCounts, 0);
+                segmentLength = 0;
+                mergedCLogC = windowCLogC;
+            }
+            for (int i = 0; i < distinct; i++) {
+                char c = windowSymbols[i];
+                segmentCounts[c] += windowCounts[c];
+                windowCounts[c] = 0;
+            }
+            segmentLength += length;
+            segmentCLogC = mergedCLogC;
+        }
+
+        if (text.length() != 0) starts.add(text.length());
+        int[] bounds = new int[starts.size()];
+        for (int i = 0; i < bounds.length; i++) bounds[i] = starts.get(i);
+        return bounds;
+    }
+
+    /**
+     * @param text the text
+     * @param from the start of the segment
+     * @param to the end of the segment
+     * @return the distinct symbols of the segment in increasing order, and their counts
+     */
+    private static int[][] countSymbols(String text, int from, int to) {
+        int[] counts = new int[Character.MAX_VALUE + 1];
+        int distinct = 0;
+        for (int i = from; i < to; i++)
+            if (counts[text.charAt(i)]++ == 0) distinct++;
+
+        int[][] table = new int[2][distinct];
+        for (int c = 0, i = 0; i < distinct; c++) {
+            if (counts[c] == 0) continue;
+            table[0][i] = c;
+            table[1][i++] = counts[c];
+        }
+        return table;
+    }
+
+    private static int indexOf(int[] symbols, char c) {
+        return Arrays.binarySearch(symbols, c);
+    }
+
+    private static String huffmanSegment(String text, int from, int to, int[] symbols, int[] counts) {
+        double[] weights = new double[counts.length];
+        for (int i = 0; i < counts.length; i++) weights[i] = counts[i];
+        int[] lengths;
+        try {
+            lengths = CodeLengths.limited(weights, MAX_CODE_LENGTH);
+        }
+        catch (Exception ex) {
+            // A segment has at most 2^16 symbols, which always fit.
+            throw new IllegalStateException(ex);
+        }
+        CanonicalCode code = new CanonicalCode(lengths);
+
+        StringBuilder bits = new StringBuilder();
+        TokenCoder.appendBits(bits, symbols.length, SYMBOL_COUNT_FIELD);
+        for (int i = 0; i < symbols.length; i++) {
+            TokenCoder.appendBits(bits, symbols[i], Character.SIZE);
+            TokenCoder.appendBits(bits, lengths[i], LENGTH_FIELD);
+        }
+        for (int i = from; i < to; i++)
+            bits.append(code.getCode(indexOf(symbols, text.charAt(i))));
+        return bits.toString();
+    }
+
+    /**
+     * Scales the counts down so that their total fits the table, keeping every count at least 1.
+     */
+    private static int[] quantize(int[] counts) {
+        long total = 0;
+        for (int count : counts) total += count;
+        if (total <= MAX_COUNT_TOTAL) return counts;
+
+        int[] scaled = new int[counts.length];
+        for (int i = 0; i < counts.length; i++)
+            scaled[i] = Math.max(1, (int) ((long) counts[i] * (MAX_COUNT_TOTAL - counts.length) / total));
+        return scaled;
+    }
+
+    private static String arithmeticSegment(String text, int from, int to, int[] symbols, int[] counts) {
+        int[] quantized = quantize(counts);
+        int[] cumulative = new int[quantized.length + 1];
+        for (int i = 0; i < quantized.length; i++) cumulative[i+1] = cumulative[i] + quantized[i];
+        int total = cumulative[quantized.length];
+
+        StringBuilder tag = new StringBuilder();
+        ArithmeticCoder coder = ArithmeticCoder.encoder(tag);
+        for (int i = from; i < to; i++) {
+            int index = indexOf(symbols, text.charAt(i));
+            coder.encode(cumulative[index], cumulative[index+1], total);
+        }
+        coder.finish();
+
+        StringBuilder bits = new StringBuilder();
+        TokenCoder.appendBits(bits, symbols.length, SYMBOL_COUNT_FIELD);
+        for (int i = 0; i < symbols.length; i++) {
+            TokenCoder.appendBits(bits, symbols[i], Character.SIZE);
+            TokenCoder.appendBits(bits, quantized[i] - 1, COUNT_FIELD);
+        }
+        TokenCoder.appendBits(bits, tag.length(), FIELD);
+        return bits.append(tag).toString();
+    }
+
+    @Override
+    public String getCoding(char symbol) {
+        return "";
+    }
+
+    @Override
+    public String encode(String text) {
+        int[] bounds = this.segment(text);
+        StringBuilder coded = new StringBuilder();
+        TokenCoder.appendBits(coded, bounds.length - 1, FIELD);
+
+        for (int s = 0; s + 1 < bounds.length; s++) {
+            int from = bounds[s], to = bounds[s+1];
+            int[][] table = countSymbols(text, from, to);
+
+            int mode = RAW;
+            String best = null;
+            int bestLength = (to - from) * Character.SIZE;
+            String huffman = huffmanSegment(text, from, to, table[0], table[1]);
+            if (huffman.length() < bestLength) {
+                mode = HUFFMAN;
+                best = huffman;
+                bestLength = huffman.length();
+            }
+            String arithmetic = arithmeticSegment(text, from, to, table[0], table[1]);
+            if (arithmetic.length() < bestLength) {
+                mode = ARITHMETIC;
+                best = arithmetic;
+            }
+
+            TokenCoder.appendBits(coded, mode, MODE_FIELD);
+            TokenCoder.appendBits(coded, to - from, FIELD);
+            if (mode != RAW) coded.append(best);
+            else for (int i = from; i < to; i++) TokenCoder.appendBits(coded, text.charAt(i), Character.SIZE);
+        }
+
+        return coded.toString();
+    }
+
+    @Override
+    public String decode(String coded) {
+        StringBuilder text = new StringBuilder();
+        int segments = (int) TokenCoder.readBits(coded, 0, FIELD);
+        int next = FIELD;
+
+        for (int s = 0; s < segments; s++) {
+            int mode = (int) TokenCoder.readBits(coded, next, MODE_FIELD);
+            int length = (int) TokenCoder.readBits(coded, next + MODE_FIELD, FIELD);
+            next += MODE_FIELD + FIELD;
+
+            if (mode == RAW) {
+                for (int i = 0; i < length; i++, next += Character.SIZE)
+                    text.append((char) TokenCoder.readBits(coded, next, Character.SIZE));
+                continue;
+            }
+
+            int distinct = (int) TokenCoder.readBits(coded, next, SYMBOL_COUNT_FIELD);
+            next += SYMBOL_COUNT_FIELD;
+            char[] symbols = new char[distinct];
+            int[] values = new int[distinct];
+            int valueField = mode == HUFFMAN ? LENGTH_FIELD : COUNT_FIELD;
+            for (int i = 0; i < distinct; i++) {
+                symbols[i] = (char) TokenCoder.readBits(coded, next, Character.SIZE);
+                values[i] = (int) TokenCoder.readBits(coded, next + Character.SIZE, valueField);
+                next += Character.SIZE + valueField;
+            }
+
+            if (mode == HUFFMAN) {
+                CanonicalCode code = new CanonicalCode(values);
+                for (int i = 0; i < length; i++) {
+                    int index = code.decode(coded, next);
+                    next += code.getLength(index);
+                    text.append(symbols[index]);
+                }
+                continue;
+            }
+
+            int[] cumulative = new int[distinct + 1];
+            for (int i = 0; i < distinct; i++) cumulative[i+1] = cumulative[i] + values[i] + 1;
+            int total = cumulative[distinct];
+            int tagLength = (int) TokenCoder.readBits(coded, next, FIELD);
+            next += FIELD;
+
+            ArithmeticCoder coder = ArithmeticCoder.decoder(coded, next);
+            for (int i = 0; i < length; i++) {
+                int target = coder.getTarget(total);
+                int index = Arrays.binarySearch(cumulative, target);
+                index = index >= 0 ? index : -index - 2;
+                while (cumulative[index+1] <= target) index++;  // Skip equal cumulative values.
+                coder.decode(cumulative[index], cumulative[index+1], total);
+                text.append(symbols[index]);
+            }
+            next += tagLength;
+        }
+
+        return text.toString();
+    }
+
+}
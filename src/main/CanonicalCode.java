@@ -0,0 +1,82 @@
+package main;
+
+/**
+ * A canonical prefix code over the symbols 0 to n-1, built from code lengths.
+ * Since canonical codes of the same length are consecutive numbers,
+ * decoding only needs the first code and the number of codes of every length,
+ * instead of a map from codes to symbols.
+ *
+ * @see CodeLengths
+ * @see ExtendedHuffman
+ * @version 1.0
+ * @author 150009974
+ */
+final class CanonicalCode {
+
+    private final String[] codes;
+    private final int maxLength;
+    private final long[] firstCode;
+    private final int[] firstIndex;
+    private final int[] countOfLength;
+    /**
+     * The symbols ordered by code, i.e. by length and then by symbol.
+     */
+    private final int[] sortedSymbols;
+
+    /**
+     * @param lengths the code length of each symbol, as given by {@link CodeLengths}
+     */
+    CanonicalCode(int[] lengths) {
+        this.codes = CodeLengths.canonical(lengths);
+
+        int max = 0;
+        for (int length : lengths) max = Math.max(max, length);
+        this.maxLength = max;
+
+        this.countOfLength = new int[max + 1];
+        for (int length : lengths) this.countOfLength[length]++;
+        this.countOfLength[0] = 0;
+
+        this.firstCode = new long[max + 1];
+        this.firstIndex = new int[max + 1];
+        long code = 0;
+        for (int length = 1, index = 0; length <= max; length++) {
+            code = (code + this.countOfLength[length-1]) << 1;
+            this.firstCode[length] = code;
+            this.firstIndex[length] = index;
+            index += this.countOfLength[length];
+        }
+
+        this.sortedSymbols = new int[lengths.length];
+        int[] next = this.firstIndex.clone();
+        for (int symbol = 0; symbol < lengths.length; symbol++)
+            if (lengths[symbol] > 0) this.sortedSymbols[next[lengths[symbol]]++] = symbol;
+    }
+
+    String getCode(int symbol) {
+        return this.codes[symbol];
+    }
+
+    int getLength(int symbol) {
+        return this.codes[symbol].length();
+    }
+
+    /**
+     * Reads one code.
+     *
+     * @param bits the coded text
+     * @param from the index of the first bit of the code
+     * @return the decoded symbol or -1 if the bits end before a code is complete
+     */
+    int decode(CharSequence bits, int from) {
+        long code = 0;
+        for (int length = 1; length <= this.maxLength && from + length <= bits.length(); length++) {
+            code = (code << 1) | (bits.charAt(from + length - 1) - '0');
+            long offset = code - this.firstCode[length];
+            if (offset >= 0 && offset < this.countOfLength[length])
+                return this.sortedSymbols[this.firstIndex[length] + (int) offset];
+        }
+        return -1;
+    }
+
+}
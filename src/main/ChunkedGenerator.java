@@ -0,0 +1,104 @@
+package main;
+
+import java.io.Writer;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+/**
+ * Generates texts in chunks of {@link ChunkedGenerator#CHUNK} characters, in parallel and reproducibly.
+ * Every chunk has its own {@link SplittableRandom}, split from a seeded one in order,
+ * so the text only depends on the seed and not on the scheduling of the threads,
+ * and a text written in batches is the same as one generated at once.
+ *
+ * @see AliasSampler
+ * @see MarkovSource
+ * @version 1.0
+ * @author 150009974
+ */
+final class ChunkedGenerator {
+
+    /**
+     * The number of characters generated with one {@link SplittableRandom}.
+     */
+    static final int CHUNK = 1 << 16;
+    /**
+     * The number of characters generated at once by {@link ChunkedGenerator#write}.
+     */
+    private static final int BATCH = 16 * CHUNK;
+
+    /**
+     * Fills a part of a buffer with generated characters.
+     */
+    interface Filler {
+
+        void fill(char[] buffer, int from, int to, SplittableRandom random);
+
+    }
+
+    private ChunkedGenerator() {}
+
+    /**
+     * Fills a part of a buffer in parallel, one chunk at a time.
+     *
+     * @param filler what generates the characters
+     * @param buffer the buffer
+     * @param from the first index to fill
+     * @param to the index after the last one to fill
+     * @param random the source of randomness, split once per chunk
+     */
+    static void fillParallel(Filler filler, char[] buffer, int from, int to, SplittableRandom random) {
+        int chunks = (to - from + CHUNK - 1) / CHUNK;
+        SplittableRandom[] randoms = new SplittableRandom[chunks];
+        for (int c = 0; c < chunks; c++) randoms[c] = random.split();
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            int start = from + c * CHUNK;
+            filler.fill(buffer, start, Math.min(to, start + CHUNK), randoms[c]);
+        });
+    }
+
+    /**
+     * @param filler what generates the characters
+     * @param length the length of the text
+     * @param seed the seed
+     * @return the same text as {@link ChunkedGenerator#write} writes
+     */
+    static char[] generate(Filler filler, int length, long seed) {
+        char[] text = new char[length];
+        fillParallel(filler, text, 0, length, new SplittableRandom(seed));
+        return text;
+    }
+
+    /**
+     * Streams a generated text, which can be longer than fits in memory.
+     * The next batch of characters is generated (in parallel) while the current one is written.
+     *
+     * @param filler what generates the characters
+     * @param length the length of the text
+     * @param seed the seed
+     * @param out where to write the text
+     * @throws Exception if writing fails
+     */
+    static void write(Filler filler, long length, long seed, Writer out) throws Exception {
+        SplittableRandom random = new SplittableRandom(seed);
+        char[][] buffers = {new char[(int) Math.min(BATCH, length)], new char[(int) Math.min(BATCH, length)]};
+
+        CompletableFuture<Integer> pending = null;
+        long generated = 0;
+        for (int b = 0; pending != null || generated < length; b ^= 1) {
+            int ready = pending == null ? 0 : pending.join();
+            if (generated < length) {
+                int size = (int) Math.min(BATCH, length - generated);
+                char[] buffer = buffers[b];
+                pending = CompletableFuture.supplyAsync(() -> {
+                    fillParallel(filler, buffer, 0, size, random);
+                    return size;
+                });
+                generated += size;
+            }
+            else pending = null;
+            if (ready > 0) out.write(buffers[b ^ 1], 0, ready);
+        }
+    }
+
+}
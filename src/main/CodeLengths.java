@@ -0,0 +1,293 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * Computes the lengths of prefix codes from symbol weights, without building {@link Huffman} trees.
+ * {@link CodeLengths#optimal(double[], int)} gives the same lengths as the Huffman algorithm and
+ * {@link CodeLengths#limited(double[], int)} gives the best lengths which do not exceed a limit,
+ * using the package-merge algorithm (Larmore and Hirschberg).
+ * Codes with the given lengths are assigned by {@link CodeLengths#canonical(int[])}.
+ *
+ * @see Huffman#buildTree(int)
+ * @see Huffman#buildLimitedTree(int)
+ * @see SizeEstimator
+ * @version 1.2
+ * @author 150009974
+ */
+final class CodeLengths {
+
+    private CodeLengths() {}
+
+    private static final int RADIX_BITS = 11;
+    private static final int RADIX_MASK = (1 << RADIX_BITS) - 1;
+    /**
+     * Marks a child which is one of the zero weight leaves added to fill the first merge.
+     */
+    private static final int DUMMY = Integer.MIN_VALUE;
+
+    /**
+     * @param weight a weight
+     * @return a key whose unsigned order is the order of the weights
+     */
+    private static long radixKey(double weight) {
+        long bits = Double.doubleToLongBits(weight);
+        return bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+    }
+
+    /**
+     * Sorts with a least significant digit radix sort on the bits of the weights, in linear time.
+     * Digits which are the same for every weight (like most of the exponent) are skipped.
+     * The sort is stable, so equal weights stay in the order of their indexes.
+     *
+     * @param weights the weights of the symbols
+     * @return the indexes of the weights, ordered from lowest weight to highest
+     */
+    private static int[] ascending(double[] weights) {
+        int m = weights.length;
+        int[] order = new int[m];
+        int[] orderBuffer = new int[m];
+        long[] keys = new long[m];
+        long[] keyBuffer = new long[m];
+        for (int i = 0; i < m; i++) {
+            order[i] = i;
+            keys[i] = radixKey(weights[i]);
+        }
+
+        int[] start = new int[RADIX_MASK + 2];
+        for (int shift = 0; shift < Long.SIZE && m > 1; shift += RADIX_BITS) {
+            Arrays.fill(start, 0);
+            for (long key : keys) start[((int) (key >>> shift) & RADIX_MASK) + 1]++;
+            if (start[((int) (keys[0] >>> shift) & RADIX_MASK) + 1] == m) continue;
+            for (int d = 1; d < start.length; d++) start[d] += start[d-1];
+
+            for (int i = 0; i < m; i++) {
+                int to = start[(int) (keys[i] >>> shift) & RADIX_MASK]++;
+                keyBuffer[to] = keys[i];
+                orderBuffer[to] = order[i];
+            }
+            long[] swapKeys = keys;
+            keys = keyBuffer;
+            keyBuffer = swapKeys;
+            int[] swapOrder = order;
+            order = orderBuffer;
+            orderBuffer = swapOrder;
+        }
+        return order;
+    }
+
+    /**
+     * Builds the Huffman tree of n-ary codes with two queues over the sorted weights:
+     * one of leaves and one of merged nodes, whose weights are created in increasing order.
+     * Zero weight leaves are added first, so that every merge combines exactly n nodes.
+     * This is the same as {@link Huffman#buildTree(int)} merging fewer nodes in its first step.
+     * Merged node p has its children at p*n to p*n+n-1: merged nodes as their index,
+     * leaf i as ~i and the zero weight leaves as {@link CodeLengths#DUMMY}.
+     * Children are always created before their parent, so the last merged node is the root.
+     *
+     * @param weights the weights of the symbols, at least 2
+     * @param n the number of digits (the base of the code), at least 2
+     * @return the children of the merged nodes
+     */
+    private static int[] mergeTree(double[] weights, int n) {
+        int m = weights.length;
+        int[] order = ascending(weights);
+        int dummies = (n - 1 - (m - 1) % (n - 1)) % (n - 1);
+        int leaves = m + dummies;
+        int internal = (leaves - 1) / (n - 1);
+        double[] merged = new double[internal];
+        int[] children = new int[internal * n];
+
+        int nextLeaf = 0, nextMerged = 0;
+        for (int p = 0; p < internal; p++) {
+            for (int child = 0; child < n; child++) {
+                double leafWeight = nextLeaf < dummies ? 0 : nextLeaf < leaves ? weights[order[nextLeaf - dummies]] : 0;
+                boolean takeLeaf = nextLeaf < leaves
+                        && (nextMerged >= p || leafWeight <= merged[nextMerged]);
+                if (takeLeaf) {
+                    merged[p] += leafWeight;
+                    children[p*n + child] = nextLeaf < dummies ? DUMMY : ~order[nextLeaf - dummies];
+                    nextLeaf++;
+                }
+                else {
+                    merged[p] += merged[nextMerged];
+                    children[p*n + child] = nextMerged++;
+                }
+            }
+        }
+        return children;
+    }
+
+    /**
+     * @param children the tree from {@link CodeLengths#mergeTree(double[], int)}
+     * @param n the number of children of every merged node
+     * @return the depth of every merged node, the root being at 0
+     */
+    private static int[] depths(int[] children, int n) {
+        int internal = children.length / n;
+        int[] depth = new int[internal];
+        for (int p = internal-1; p >= 0; p--)
+            for (int child = p*n; child < (p+1)*n; child++)
+                if (children[child] >= 0) depth[children[child]] = depth[p] + 1;
+        return depth;
+    }
+
+    /**
+     * Binary Huffman code lengths.
+     *
+     * @param weights the weights of the symbols, all positive
+     * @return the code length of each symbol
+     * @see CodeLengths#optimal(double[], int)
+     */
+    static int[] optimal(double[] weights) {
+        return optimal(weights, 2);
+    }
+
+    /**
+     * Huffman code lengths for codes of n digits.
+     *
+     * @param weights the weights of the symbols, all positive
+     * @param n the number of digits (the base of the code), at least 2
+     * @return the code length of each symbol, in digits
+     * @see CodeLengths#mergeTree(double[], int)
+     */
+    static int[] optimal(double[] weights, int n) {
+        int m = weights.length;
+        int[] lengths = new int[m];
+        if (m == 1) lengths[0] = 1;
+        if (m <= 1) return lengths;
+
+        int[] children = mergeTree(weights, n);
+        int[] depth = depths(children, n);
+        for (int child = 0; child < children.length; child++)
+            if (children[child] < 0 && children[child] != DUMMY) lengths[~children[child]] = depth[child / n] + 1;
+        return lengths;
+    }
+
+    /**
+     * Huffman codes of n digits, read off the tree: the digit of a child is its position among
+     * the children of its parent, '0' for the lightest.
+     * Only the codes themselves are allocated.
+     *
+     * @param weights the weights of the symbols, all positive
+     * @param n the number of digits (the base of the code), at least 2
+     * @return the code of each symbol, as a {@link String} of the characters from '0' to '0'+n-1
+     */
+    static String[] codes(double[] weights, int n) {
+        int m = weights.length;
+        String[] codes = new String[m];
+        if (m == 1) codes[0] = "0";
+        if (m <= 1) return codes;
+
+        int[] children = mergeTree(weights, n);
+        int internal = children.length / n;
+        int[] depth = depths(children, n);
+        int[] parent = new int[internal];
+        for (int child = 0; child < children.length; child++)
+            if (children[child] >= 0) parent[children[child]] = child;
+
+        int maxDepth = 0;
+        for (int d : depth) maxDepth = Math.max(maxDepth, d);
+        char[] digits = new char[maxDepth + 1];
+        for (int child = 0; child < children.length; child++) {
+            if (children[child] < 0 && children[child] != DUMMY) {
+                int length = depth[child / n] + 1;
+                // Walk up from the leaf, writing the digits from the last one.
+                for (int slot = child, i = length - 1; i >= 0; i--) {
+                    digits[i] = (char) ('0' + slot % n);
+                    if (i > 0) slot = parent[slot / n];
+                }
+                codes[~children[child]] = new String(digits, 0, length);
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * Optimal code lengths no longer than maxLength, computed with package-merge.
+     * For each length, from the longest to the shortest, the sorted leaves are merged with
+     * the packages (sums of pairs) of the previous list. Taking the 2n-2 lightest items of the last list,
+     * every leaf's code length is the number of lists in which it is chosen.
+     *
+     * @param weights the weights of the symbols, all positive
+     * @param maxLength the longest allowed code length
+     * @return the code length of each symbol
+     * @throws Exception if there are more than 2^maxLength symbols
+     */
+    static int[] limited(double[] weights, int maxLength) throws Exception {
+        int n = weights.length;
+        if (maxLength < 1 || maxLength >= Long.SIZE)
+            throw new Exception("Code length limit must be between 1 and " + (Long.SIZE-1) + "!");
+        if ((1L << maxLength) < n)
+            throw new Exception(n + " symbols do not fit in codes of " + maxLength + " bits!");
+        int[] lengths = new int[n];
+        if (n == 1) lengths[0] = 1;
+        if (n <= 1) return lengths;
+
+        int[] order = ascending(weights);
+        boolean[][] isLeaf = new boolean[maxLength][];
+        double[] previous = new double[0];
+        for (int level = 0; level < maxLength; level++) {
+            int packages = previous.length / 2;
+            double[] list = new double[n + packages];
+            isLeaf[level] = new boolean[n + packages];
+
+            int leaf = 0, pack = 0;
+            for (int i = 0; i < list.length; i++) {
+                double packageWeight = pack < packages ? previous[2*pack] + previous[2*pack+1] : 0;
+                if (leaf < n && (pack >= packages || weights[order[leaf]] <= packageWeight)) {
+                    list[i] = weights[order[leaf++]];
+                    isLeaf[level][i] = true;
+                }
+                else {
+                    list[i] = packageWeight;
+                    pack++;
+                }
+            }
+            previous = list;
+        }
+
+        int take = 2*n - 2;
+        for (int level = maxLength-1; level >= 0 && take > 0; level--) {
+            int leaf = 0, packages = 0;
+            for (int i = 0; i < take; i++) {
+                if (isLeaf[level][i]) lengths[order[leaf++]]++;
+                else packages++;
+            }
+            take = 2*packages;
+        }
+        return lengths;
+    }
+
+    /**
+     * Assigns canonical binary codes: shorter codes come first and
+     * codes of the same length are consecutive numbers, in the order of the symbols.
+     *
+     * @param lengths the code length of each symbol, as given by this class, below 64
+     * @return the code of each symbol, as a {@link String} of '0' and '1'
+     */
+    static String[] canonical(int[] lengths) {
+        int maxLength = 0;
+        for (int length : lengths) maxLength = Math.max(maxLength, length);
+
+        int[] countOfLength = new int[maxLength + 1];
+        for (int length : lengths) countOfLength[length]++;
+        countOfLength[0] = 0;
+
+        long[] nextCode = new long[maxLength + 1];
+        long code = 0;
+        for (int length = 1; length <= maxLength; length++) {
+            code = (code + countOfLength[length-1]) << 1;
+            nextCode[length] = code;
+        }
+
+        String[] codes = new String[lengths.length];
+        for (int i = 0; i < lengths.length; i++) {
+            StringBuilder bits = new StringBuilder(lengths[i]);
+            TokenCoder.appendBits(bits, nextCode[lengths[i]]++, lengths[i]);
+            codes[i] = bits.toString();
+        }
+        return codes;
+    }
+
+}
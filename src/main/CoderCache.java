@@ -0,0 +1,175 @@
+package main;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the most recently used coders, so that coding many texts with the same model
+ * does not build the same {@link Huffman} tree or {@link Arithmetic} table again.
+ * A coder is found by its model, a {@link SourceSnapshot}, together with the technique and the base.
+ * Snapshots compare their quantized probabilities, so models which only differ by rounding errors share a coder.
+ * When the cache is full, the least recently used coder is evicted.
+ * The coders handed out are already built and keep no state between calls,
+ * so they can be used by many threads at once.
+ *
+ * @see CoderCache#get(SourceSnapshot, String, int)
+ * @see CoderCache#getHits()
+ * @see CoderCache#getMisses()
+ * @see CoderCache#getEvictions()
+ * @version 1.1
+ * @author 150009974
+ */
+public class CoderCache {
+
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private static final class Key {
+
+        private final String technique;
+        private final int base;
+        private final SourceSnapshot model;
+        private final int hash;
+
+        Key(String technique, int base, SourceSnapshot model) {
+            this.technique = technique;
+            this.base = base;
+            this.model = model;
+            this.hash = 31 * (31 * technique.hashCode() + base) + model.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return this.hash == other.hash
+                    && this.base == other.base
+                    && this.technique.equals(other.technique)
+                    && this.model.equals(other.model);
+        }
+
+    }
+
+    private final int capacity;
+    private final LinkedHashMap<Key, CompressionTechnique> coders;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public CoderCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the largest number of coders kept
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public CoderCache(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Cache capacity must be positive!");
+        this.capacity = capacity;
+        // Access order: every get moves the coder to the end, so the eldest is the least recently used.
+        this.coders = new LinkedHashMap<Key, CompressionTechnique>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CompressionTechnique> eldest) {
+                if (this.size() <= CoderCache.this.capacity) return false;
+                CoderCache.this.evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @param source the model
+     * @param technique "huffman" or "arithmetic"
+     * @param base the base of the Huffman code, ignored by arithmetic coding
+     * @return a built coder for the current entries of the source
+     * @throws Exception if the technique is unknown or the coder can not be built from the model
+     * @see CoderCache#get(SourceSnapshot, String, int)
+     */
+    public CompressionTechnique get(InformationSource source, String technique, int base) throws Exception {
+        return this.get(source.snapshot(), technique, base);
+    }
+
+    /**
+     * Returns the coder for a model, building it only if no coder for the same model is cached.
+     *
+     * @param model the model
+     * @param technique "huffman" or "arithmetic"
+     * @param base the base of the Huffman code, ignored by arithmetic coding
+     * @return a built coder, shared with every other caller using the same model
+     * @throws Exception if the technique is unknown or the coder can not be built from the model
+     */
+    public synchronized CompressionTechnique get(SourceSnapshot model, String technique, int base)
+            throws Exception {
+        if (technique.equals("arithmetic")) base = 2;
+        Key key = new Key(technique, base, model);
+
+        CompressionTechnique coder = this.coders.get(key);
+        if (coder != null) {
+            this.hits++;
+            return coder;
+        }
+        this.misses++;
+
+        switch (technique) {
+            case "huffman":
+                Huffman huffman = new Huffman(model);
+                huffman.buildTree(base);
+                coder = huffman;
+                break;
+            case "arithmetic":
+                coder = new Arithmetic(model);
+                break;
+            default:
+                throw new Exception("Unknown coding technique: " + technique + "!");
+        }
+        this.coders.put(key, coder);
+        return coder;
+    }
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     * @return the fraction of requests served from the cache, 0 if there were none
+     */
+    public synchronized double getHitRate() {
+        long requests = this.hits + this.misses;
+        return requests == 0 ? 0.0 : 1.0 * this.hits / requests;
+    }
+
+    public synchronized int size() {
+        return this.coders.size();
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Removes every coder, keeping the statistics.
+     */
+    public synchronized void clear() {
+        this.coders.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d/%d coders, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                this.coders.size(), this.capacity, this.hits, this.misses, 100 * this.getHitRate(), this.evictions);
+    }
+
+}
@@ -0,0 +1,318 @@
+package main;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+/**
+ * Counts what the coders of one technique do, for every instance in every thread:
+ * the bytes going in and out, the latency of every encode and decode call,
+ * how long building the models takes, and technique specific numbers
+ * ({@link Arithmetic} rescales and underflows, the average {@link Huffman} code length).
+ * Coders working for another technique, like the back end of {@link LZSS}, count under that technique's name,
+ * so every technique only shows the calls it made itself.
+ * The coders add to {@link LongAdder}s once per call, never inside their loops,
+ * so that threads coding at the same time do not contend on the counters.
+ * Every technique is registered as an MBean, named main:type=CoderMetrics,technique=...,
+ * and {@link CoderMetrics#dumpEvery(long, TimeUnit, PrintStream)} prints all of them periodically.
+ * The model entropy and the average code length are those of the models that coded each symbol,
+ * averaged over the symbols encoded, so that they compare to the bits per symbol
+ * however many models are in use.
+ *
+ * @see CoderMetricsMBean
+ * @see LatencyHistogram
+ * @see CoderMetrics#forTechnique(String)
+ * @version 1.1
+ * @author 150009974
+ */
+public final class CoderMetrics implements CoderMetricsMBean {
+
+    private static final ConcurrentHashMap<String, CoderMetrics> BY_TECHNIQUE = new ConcurrentHashMap<>();
+
+    private final String technique;
+    private final LongAdder encodedSymbols = new LongAdder();
+    private final DoubleAdder encodedBits = new DoubleAdder();
+    private final LatencyHistogram encodeNanos = new LatencyHistogram();
+    private final LatencyHistogram decodeNanos = new LatencyHistogram();
+    private final LongAdder builds = new LongAdder();
+    private final LongAdder buildNanos = new LongAdder();
+    private final LongAdder rescales = new LongAdder();
+    private final LongAdder underflows = new LongAdder();
+    /**
+     * The entropy and the average code length of the model of every encode call, times its symbols.
+     */
+    private final DoubleAdder entropyBits = new DoubleAdder();
+    private final DoubleAdder codeLengthDigits = new DoubleAdder();
+
+    private CoderMetrics(String technique) {
+        this.technique = technique;
+    }
+
+    /**
+     * @param technique the name of the technique, like "huffman"
+     * @return the metrics of the technique, registered as an MBean the first time
+     */
+    public static CoderMetrics forTechnique(String technique) {
+        return BY_TECHNIQUE.computeIfAbsent(technique, name -> {
+            CoderMetrics metrics = new CoderMetrics(name);
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+                        new ObjectName("main:type=CoderMetrics,technique=" + name));
+            }
+            catch (Exception ex) {
+                // Coding works the same without JMX, the metrics are still in the dump.
+                System.err.println("Could not register the " + name + " metrics: " + ex.getMessage());
+            }
+            return metrics;
+        });
+    }
+
+    /**
+     * @return the metrics of every technique used so far
+     */
+    public static Collection<CoderMetrics> all() {
+        return new ArrayList<>(BY_TECHNIQUE.values());
+    }
+
+    /**
+     * @return one line per technique used so far
+     */
+    public static String dump() {
+        StringBuilder text = new StringBuilder();
+        for (CoderMetrics metrics : all()) text.append(metrics).append(System.lineSeparator());
+        return text.toString();
+    }
+
+    /**
+     * Prints {@link CoderMetrics#dump()} every period, from a daemon thread.
+     *
+     * @param period the time between dumps
+     * @param unit the unit of the period
+     * @param out where to print
+     * @return the executor printing, to shut down when the dumps are no longer needed
+     */
+    public static ScheduledExecutorService dumpEvery(long period, TimeUnit unit, PrintStream out) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "coder-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(() -> out.print(dump()), period, period, unit);
+        return executor;
+    }
+
+    /**
+     * @param weights the weights of the symbols, not necessarily summing to 1
+     * @return the entropy in bits of the symbols, with the weights normalised
+     */
+    static double entropy(double[] weights) {
+        double sum = 0.0;
+        for (double weight : weights) sum += weight;
+        double entropy = 0.0;
+        for (double weight : weights) {
+            // An EOD weighing Double.MIN_VALUE has to add 0, not overflow.
+            double p = weight / sum;
+            if (p > 0) entropy -= p * Math.log(p);
+        }
+        return entropy / Math.log(2);
+    }
+
+    /**
+     * @param nanos the time the call took
+     * @param symbols the symbols encoded
+     * @param bits the bits of the code
+     * @param entropy the entropy in bits per symbol of the model coding
+     * @param averageCodeLength the average digits per symbol of the code, 0 if it has none
+     */
+    void recordEncode(long nanos, int symbols, double bits, double entropy, double averageCodeLength) {
+        this.encodeNanos.record(nanos);
+        this.encodedSymbols.add(symbols);
+        this.encodedBits.add(bits);
+        this.entropyBits.add(symbols * entropy);
+        if (averageCodeLength != 0) this.codeLengthDigits.add(symbols * averageCodeLength);
+    }
+
+    void recordDecode(long nanos) {
+        this.decodeNanos.record(nanos);
+    }
+
+    void recordBuild(long nanos) {
+        this.builds.increment();
+        this.buildNanos.add(nanos);
+    }
+
+    void recordRescales(long rescales, long underflows) {
+        if (rescales != 0) this.rescales.add(rescales);
+        if (underflows != 0) this.underflows.add(underflows);
+    }
+
+    @Override
+    public String getTechnique() {
+        return this.technique;
+    }
+
+    @Override
+    public long getEncodeCalls() {
+        return this.encodeNanos.getCount();
+    }
+
+    @Override
+    public long getDecodeCalls() {
+        return this.decodeNanos.getCount();
+    }
+
+    /**
+     * @return the bytes of the messages encoded, 2 per character as in the GUI
+     */
+    @Override
+    public long getBytesIn() {
+        return this.encodedSymbols.sum() * Character.BYTES;
+    }
+
+    /**
+     * @return the bytes of the codes, with every digit counting log2(base) bits
+     */
+    @Override
+    public long getBytesOut() {
+        return (long) Math.ceil(this.encodedBits.sum() / 8);
+    }
+
+    /**
+     * @return the symbols encoded per second spent encoding
+     */
+    @Override
+    public double getSymbolsPerSecond() {
+        long nanos = this.encodeNanos.getTotal();
+        return nanos == 0 ? 0.0 : this.encodedSymbols.sum() * 1e9 / nanos;
+    }
+
+    @Override
+    public double getBitsPerSymbol() {
+        long symbols = this.encodedSymbols.sum();
+        return symbols == 0 ? 0.0 : this.encodedBits.sum() / symbols;
+    }
+
+    /**
+     * @return the entropy in bits per symbol of the models, weighted by the symbols they encoded,
+     * the least {@link CoderMetrics#getBitsPerSymbol()} can be
+     */
+    @Override
+    public double getModelEntropy() {
+        long symbols = this.encodedSymbols.sum();
+        return symbols == 0 ? 0.0 : this.entropyBits.sum() / symbols;
+    }
+
+    @Override
+    public double getEncodeMeanMicros() {
+        return this.encodeNanos.getMean() / 1e3;
+    }
+
+    @Override
+    public long getEncodeP50Micros() {
+        return this.encodeNanos.getPercentile(0.5) / 1000;
+    }
+
+    @Override
+    public long getEncodeP99Micros() {
+        return this.encodeNanos.getPercentile(0.99) / 1000;
+    }
+
+    @Override
+    public long getEncodeMaxMicros() {
+        return this.encodeNanos.getMax() / 1000;
+    }
+
+    @Override
+    public double getDecodeMeanMicros() {
+        return this.decodeNanos.getMean() / 1e3;
+    }
+
+    @Override
+    public long getDecodeP50Micros() {
+        return this.decodeNanos.getPercentile(0.5) / 1000;
+    }
+
+    @Override
+    public long getDecodeP99Micros() {
+        return this.decodeNanos.getPercentile(0.99) / 1000;
+    }
+
+    @Override
+    public long getDecodeMaxMicros() {
+        return this.decodeNanos.getMax() / 1000;
+    }
+
+    @Override
+    public long getModelBuilds() {
+        return this.builds.sum();
+    }
+
+    @Override
+    public double getModelBuildMeanMicros() {
+        long builds = this.builds.sum();
+        return builds == 0 ? 0.0 : this.buildNanos.sum() / 1e3 / builds;
+    }
+
+    /**
+     * @return the times {@link Arithmetic} output a bit because the interval was in one half
+     */
+    @Override
+    public long getRescales() {
+        return this.rescales.sum();
+    }
+
+    /**
+     * @return the times {@link Arithmetic} expanded an interval straddling the middle, deferring a bit
+     */
+    @Override
+    public long getUnderflows() {
+        return this.underflows.sum();
+    }
+
+    /**
+     * @return the average number of digits of the {@link Huffman} codes, weighted by the symbols they encoded
+     */
+    @Override
+    public double getAverageCodeLength() {
+        long symbols = this.encodedSymbols.sum();
+        return symbols == 0 ? 0.0 : this.codeLengthDigits.sum() / symbols;
+    }
+
+    @Override
+    public void reset() {
+        this.encodedSymbols.reset();
+        this.encodedBits.reset();
+        this.encodeNanos.reset();
+        this.decodeNanos.reset();
+        this.builds.reset();
+        this.buildNanos.reset();
+        this.rescales.reset();
+        this.underflows.reset();
+        this.entropyBits.reset();
+        this.codeLengthDigits.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d encodes, %d decodes, %d bytes in, %d bytes out, %.0f symbols/s, "
+                        + "%.3f bits/symbol (entropy %.3f), encode us mean %.1f p50 %d p99 %d max %d, "
+                        + "decode us mean %.1f p50 %d p99 %d max %d, %d builds (mean %.1f us), "
+                        + "%d rescales, %d underflows, average code length %.3f",
+                this.technique, this.getEncodeCalls(), this.getDecodeCalls(), this.getBytesIn(), this.getBytesOut(),
+                this.getSymbolsPerSecond(), this.getBitsPerSymbol(), this.getModelEntropy(),
+                this.getEncodeMeanMicros(), this.getEncodeP50Micros(), this.getEncodeP99Micros(),
+                this.getEncodeMaxMicros(), this.getDecodeMeanMicros(), this.getDecodeP50Micros(),
+                this.getDecodeP99Micros(), this.getDecodeMaxMicros(), this.getModelBuilds(),
+                this.getModelBuildMeanMicros(), this.getRescales(), this.getUnderflows(),
+                this.getAverageCodeLength());
+    }
+
+}
@@ -0,0 +1,41 @@
+package main;
+
+/**
+ * What {@link CoderMetrics} shows through JMX, for example in JConsole
+ * under the "main" domain, one bean per technique.
+ * Latencies are in microseconds, sizes in bytes of 8 bits.
+ *
+ * @see CoderMetrics#forTechnique(String)
+ * @version 1.0
+ * @author 150009974
+ */
+public interface CoderMetricsMBean {
+
+    String getTechnique();
+
+    long getEncodeCalls();
+    long getDecodeCalls();
+    long getBytesIn();
+    long getBytesOut();
+    double getSymbolsPerSecond();
+    double getBitsPerSymbol();
+    double getModelEntropy();
+
+    double getEncodeMeanMicros();
+    long getEncodeP50Micros();
+    long getEncodeP99Micros();
+    long getEncodeMaxMicros();
+    double getDecodeMeanMicros();
+    long getDecodeP50Micros();
+    long getDecodeP99Micros();
+    long getDecodeMaxMicros();
+
+    long getModelBuilds();
+    double getModelBuildMeanMicros();
+    long getRescales();
+    long getUnderflows();
+    double getAverageCodeLength();
+
+    void reset();
+
+}
@@ -0,0 +1,165 @@
+package main;
+
+/**
+ * Java Flight Recorder events for the phases of compressing a text:
+ * estimating the model, building the coder, encoding, decoding,
+ * and reading and writing files, each with its sizes and technique.
+ * They are under "Compression" in JDK Mission Control, and can be enabled on their own,
+ * for example with -XX:StartFlightRecording:settings=profile or a .jfc file naming main.Encode etc.
+ * <p>
+ * Every phase is timed the same way:
+ * <pre>
+ * Object event = CodingEvents.beginEncode();
+ * ... the work ...
+ * if (CodingEvents.shouldCommit(event))
+ *     CodingEvents.commitEncode(event, "huffman", characters, codeLength);
+ * </pre>
+ * The events extend jdk.jfr.Event, which Java 8 only has from 8u262,
+ * so they are in jfr.FlightRecorderEvents and this class only loads them,
+ * once, when the JDK has Flight Recorder.
+ * Without it every method does nothing and the begin methods return null,
+ * so the coders and the GUI run on any Java 8.
+ * When the events are not being recorded, begin and shouldCommit do nothing either
+ * and the JIT compiler removes the unused event object, so the events can stay in the hot paths.
+ *
+ * @see CoderMetrics
+ * @version 1.1
+ * @author 150009974
+ */
+public final class CodingEvents {
+
+    /**
+     * Creates and commits the events. Implemented by jfr.FlightRecorderEvents.
+     */
+    public interface Recorder {
+
+        Object beginEstimate();
+        Object beginBuild();
+        Object beginEncode();
+        Object beginDecode();
+        Object beginFileRead();
+        Object beginFileWrite();
+
+        boolean shouldCommit(Object event);
+
+        void commitEstimate(Object event, int textLength, int symbols);
+        void commitBuild(Object event, String technique, int symbols, int base);
+        void commitEncode(Object event, String technique, int characters, int codeLength);
+        void commitDecode(Object event, String technique, int codeLength, int characters);
+        void commitFileRead(Object event, String path, long bytes, int characters, boolean pdf);
+        void commitFileWrite(Object event, String path, long bytes);
+
+    }
+
+    /**
+     * The recorder, or null if the JDK has no Flight Recorder.
+     */
+    private static final Recorder RECORDER = loadRecorder();
+
+    private CodingEvents() {}
+
+    private static Recorder loadRecorder() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (Recorder) Class.forName("jfr.FlightRecorderEvents").getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the started event, or null if there is no Flight Recorder
+     */
+    public static Object beginEstimate() {
+        return RECORDER == null ? null : RECORDER.beginEstimate();
+    }
+
+    public static Object beginBuild() {
+        return RECORDER == null ? null : RECORDER.beginBuild();
+    }
+
+    public static Object beginEncode() {
+        return RECORDER == null ? null : RECORDER.beginEncode();
+    }
+
+    public static Object beginDecode() {
+        return RECORDER == null ? null : RECORDER.beginDecode();
+    }
+
+    public static Object beginFileRead() {
+        return RECORDER == null ? null : RECORDER.beginFileRead();
+    }
+
+    public static Object beginFileWrite() {
+        return RECORDER == null ? null : RECORDER.beginFileWrite();
+    }
+
+    /**
+     * @param event returned by one of the begin methods
+     * @return if the event is being recorded, so its fields are worth working out
+     */
+    public static boolean shouldCommit(Object event) {
+        return event != null && RECORDER.shouldCommit(event);
+    }
+
+    /**
+     * @param event returned by {@link CodingEvents#beginEstimate()}
+     * @param textLength the characters counted
+     * @param symbols the symbols of the model
+     */
+    public static void commitEstimate(Object event, int textLength, int symbols) {
+        if (event != null) RECORDER.commitEstimate(event, textLength, symbols);
+    }
+
+    /**
+     * @param event returned by {@link CodingEvents#beginBuild()}
+     * @param technique the name of the technique, like "huffman"
+     * @param symbols the symbols of the model, with the EOD
+     * @param base the base of the code
+     */
+    public static void commitBuild(Object event, String technique, int symbols, int base) {
+        if (event != null) RECORDER.commitBuild(event, technique, symbols, base);
+    }
+
+    /**
+     * @param event returned by {@link CodingEvents#beginEncode()}
+     * @param technique the name of the technique, like "huffman"
+     * @param characters the characters encoded
+     * @param codeLength the digits of the code
+     */
+    public static void commitEncode(Object event, String technique, int characters, int codeLength) {
+        if (event != null) RECORDER.commitEncode(event, technique, characters, codeLength);
+    }
+
+    /**
+     * @param event returned by {@link CodingEvents#beginDecode()}
+     * @param technique the name of the technique, like "huffman"
+     * @param codeLength the digits of the code
+     * @param characters the characters decoded
+     */
+    public static void commitDecode(Object event, String technique, int codeLength, int characters) {
+        if (event != null) RECORDER.commitDecode(event, technique, codeLength, characters);
+    }
+
+    /**
+     * @param event returned by {@link CodingEvents#beginFileRead()}
+     * @param path the file read
+     * @param bytes the size of the file
+     * @param characters the characters of the text read
+     * @param pdf if the file was parsed as a PDF
+     */
+    public static void commitFileRead(Object event, String path, long bytes, int characters, boolean pdf) {
+        if (event != null) RECORDER.commitFileRead(event, path, bytes, characters, pdf);
+    }
+
+    /**
+     * @param event returned by {@link CodingEvents#beginFileWrite()}
+     * @param path the file written
+     * @param bytes the size of the file
+     */
+    public static void commitFileWrite(Object event, String path, long bytes) {
+        if (event != null) RECORDER.commitFileWrite(event, path, bytes);
+    }
+
+}
@@ -0,0 +1,342 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * Context mixing: the prediction of every bit is a mix of the predictions of several models.
+ * The text is first written as bytes (1 byte for ASCII characters, 2 or 3 for the others),
+ * and every byte is coded bit by bit, most significant first, with a {@link BinaryCoder}.
+ * The models predict the next bit from the bits of the current byte together with
+ * the previous 0 to n bytes (orders 0 to n) or the current word (letters since the last non-letter).
+ * Each model keeps an adaptive probability per context in a hash table with 2^memoryBits slots,
+ * whose rate of adaptation slows down as the context is seen more often.
+ * The predictions are combined in the logistic domain by a mixer, which learns online
+ * a set of weights per partial byte, minimising the coding cost.
+ * The mixed prediction is then refined by two adaptive probability maps (secondary estimation),
+ * one with the partial byte as context and one with the previous byte too.
+ * Like {@link BinaryArithmetic}, nothing has to be written in the coded text apart from its length,
+ * since the decoder builds the same models as the encoder while decoding.
+ * The models take (n+2) * 2^memoryBits * 4 bytes, and the maps about 9 MB more.
+ *
+ * @see BinaryCoder
+ * @see ContextMixing#ContextMixing(int, int)
+ * @version 1.0
+ * @author 150009974
+ */
+public class ContextMixing extends CompressionTechnique {
+
+    public static final int MAX_ORDER = 7;
+    public static final int DEFAULT_ORDER = 5;
+    public static final int MIN_MEMORY_BITS = 10;
+    public static final int MAX_MEMORY_BITS = 26;
+    public static final int DEFAULT_MEMORY_BITS = 20;
+
+    private static final int LENGTH_BYTES = Integer.BYTES;
+    /**
+     * Probabilities are 12 bits, stretched probabilities are in [-2047; 2047] with 8 fractional bits.
+     */
+    private static final int STRETCH_LIMIT = 2047;
+    private static final int[] SQUASH = new int[2 * STRETCH_LIMIT + 1];
+    private static final short[] STRETCH = new short[BinaryCoder.PROBABILITY_ONE];
+    /**
+     * The adaptation rate of a context after it has been seen n times: about 1/(n+1.5).
+     */
+    private static final int[] RATE = new int[1024];
+    private static final int COUNT_LIMIT = 255;
+
+    static {
+        for (int x = -STRETCH_LIMIT; x <= STRETCH_LIMIT; x++) {
+            int p = (int) Math.round(BinaryCoder.PROBABILITY_ONE / (1.0 + Math.exp(-x / 256.0)));
+            SQUASH[x + STRETCH_LIMIT] = Math.max(1, Math.min(BinaryCoder.PROBABILITY_ONE - 1, p));
+        }
+        // The inverse of squash: the smallest x which squashes to at least p.
+        int x = -STRETCH_LIMIT;
+        for (int p = 0; p < STRETCH.length; p++) {
+            while (x < STRETCH_LIMIT && squash(x) < p) x++;
+            STRETCH[p] = (short) x;
+        }
+        for (int n = 0; n < RATE.length; n++) RATE[n] = 16384 / (n + n + 3);
+    }
+
+    private static int squash(int x) {
+        if (x > STRETCH_LIMIT) x = STRETCH_LIMIT;
+        if (x < -STRETCH_LIMIT) x = -STRETCH_LIMIT;
+        return SQUASH[x + STRETCH_LIMIT];
+    }
+
+    private static int stretch(int p) {
+        return STRETCH[p];
+    }
+
+    private final int order;
+    private final int memoryBits;
+
+    /**
+     * @param order the longest context in bytes, from 0 to {@link ContextMixing#MAX_ORDER}
+     * @param memoryBits the log2 of the number of slots of every model,
+     *                   from {@link ContextMixing#MIN_MEMORY_BITS} to {@link ContextMixing#MAX_MEMORY_BITS}
+     * @throws Exception if either is out of range
+     */
+    public ContextMixing(int order, int memoryBits) throws Exception {
+        if (order < 0 || order > MAX_ORDER)
+            throw new Exception("Context mixing order must be between 0 and " + MAX_ORDER + "!");
+        if (memoryBits < MIN_MEMORY_BITS || memoryBits > MAX_MEMORY_BITS)
+            throw new Exception("Memory bits must be between " + MIN_MEMORY_BITS + " and " + MAX_MEMORY_BITS + "!");
+        this.order = order;
+        this.memoryBits = memoryBits;
+    }
+
+    public ContextMixing() throws Exception {
+        this(DEFAULT_ORDER, DEFAULT_MEMORY_BITS);
+    }
+
+    /**
+     * An adaptive probability map: refines a probability given a small context,
+     * by interpolating between 33 learnt probabilities along the stretched input.
+     */
+    private static final class ProbabilityMap {
+
+        private static final int BUCKETS = 33;
+        private static final int SHIFT = 7;
+
+        private final int[] probabilities;
+        private int index;
+
+        ProbabilityMap(int contexts) {
+            this.probabilities = new int[contexts * BUCKETS];
+            for (int c = 0; c < contexts; c++)
+                for (int j = 0; j < BUCKETS; j++)
+                    this.probabilities[c * BUCKETS + j] = squash((j - BUCKETS / 2) * 128) * 16;
+        }
+
+        int refine(int p, int context) {
+            int s = stretch(p) + STRETCH_LIMIT + 1;
+            int weight = s & 127;
+            this.index = context * BUCKETS + (s >> 7);
+            return (this.probabilities[this.index] * (128 - weight)
+                    + this.probabilities[this.index + 1] * weight) >> 11;
+        }
+
+        void update(int bit) {
+            int target = (bit << 16) + (bit << SHIFT) - bit - bit;
+            this.probabilities[this.index] += (target - this.probabilities[this.index]) >> SHIFT;
+            this.probabilities[this.index + 1] += (target - this.probabilities[this.index + 1]) >> SHIFT;
+        }
+
+    }
+
+    /**
+     * The state of the models for one message. The encoder and the decoder each make one
+     * and make the same predictions, as they see the same bits.
+     */
+    private final class Predictor {
+
+        private static final int LEARNING_RATE = 16;
+        private static final int MIXER_SETS = 256;
+
+        private final int inputs = order + 2;
+        /**
+         * Slots hold the probability in the top 22 bits and the count of the context in the bottom 10.
+         */
+        private final int[][] tables = new int[this.inputs][1 << memoryBits];
+        private final long[] hashes = new long[this.inputs];
+        private final int[] slots = new int[this.inputs];
+        private final int[] stretched = new int[this.inputs + 1];
+        private final int[] weights = new int[MIXER_SETS * (this.inputs + 1)];
+        private final ProbabilityMap order0Map = new ProbabilityMap(1 << 8);
+        private final ProbabilityMap order1Map = new ProbabilityMap(1 << 16);
+
+        private long history = 0;  // The previous 8 bytes.
+        private long word = 0;
+        private int partial = 1;  // The bits of the current byte after a leading 1.
+        private int mixed;
+        private int weightSet;
+        private int prediction;
+
+        Predictor() {
+            for (int[] table : this.tables) Arrays.fill(table, 1 << 31);
+            Arrays.fill(this.weights, (1 << 16) / 4);
+            this.hashContexts();
+            this.predict();
+        }
+
+        private int slot(long hash) {
+            return (int) (((hash + this.partial * 0x2545F4914F6CDD1DL) * 0x9E3779B97F4A7C15L) >>> (64 - memoryBits));
+        }
+
+        private void hashContexts() {
+            for (int k = 0; k <= order; k++) {
+                long context = k == 0 ? 0 : this.history & (-1L >>> (Long.SIZE - Byte.SIZE * k));
+                this.hashes[k] = (context + k) * 0xD6E8FEB86659FD93L;
+            }
+            this.hashes[order + 1] = (this.word + (this.history & 0xFF) * 31 + MAX_ORDER + 1) * 0xD6E8FEB86659FD93L;
+        }
+
+        private void predict() {
+            for (int i = 0; i < this.inputs; i++) {
+                this.slots[i] = this.slot(this.hashes[i]);
+                this.stretched[i] = stretch(this.tables[i][this.slots[i]] >>> 20);
+            }
+            this.stretched[this.inputs] = 256;  // Bias.
+
+            this.weightSet = this.partial * (this.inputs + 1);
+            long dot = 0;
+            for (int i = 0; i <= this.inputs; i++)
+                dot += (long) this.stretched[i] * this.weights[this.weightSet + i];
+            this.mixed = squash((int) (dot >> 16));
+
+            int p0 = this.order0Map.refine(this.mixed, this.partial);
+            int p1 = this.order1Map.refine(this.mixed, this.partial | (int) (this.history & 0xFF) << 8);
+            int p = (2 * this.mixed + p0 + p1 * 5 + 4) >> 3;
+            this.prediction = Math.max(1, Math.min(BinaryCoder.PROBABILITY_ONE - 1, p));
+        }
+
+        /**
+         * @return the probability that the next bit is 0, for the {@link BinaryCoder}
+         */
+        int probabilityOfZero() {
+            return BinaryCoder.PROBABILITY_ONE - this.prediction;
+        }
+
+        void update(int bit) {
+            for (int i = 0; i < this.inputs; i++) {
+                int[] table = this.tables[i];
+                int t = table[this.slots[i]];
+                int n = t & 1023;
+                int p = t >>> 10;
+                if (n < COUNT_LIMIT) t++;
+                else t = (t & 0xFFFFFC00) | COUNT_LIMIT;
+                t += (((bit << 22) - p) >> 3) * RATE[n] & 0xFFFFFC00;
+                table[this.slots[i]] = t;
+            }
+
+            int error = ((bit << 12) - this.mixed) * LEARNING_RATE;
+            for (int i = 0; i <= this.inputs; i++)
+                this.weights[this.weightSet + i] += (this.stretched[i] * error) >> 14;
+            this.order0Map.update(bit);
+            this.order1Map.update(bit);
+
+            this.partial = (this.partial << 1) | bit;
+            if (this.partial >= 1 << Byte.SIZE) {
+                int b = this.partial & 0xFF;
+                this.history = (this.history << Byte.SIZE) | b;
+                if (Character.isLetter(b) || b >= 0x80) this.word = (this.word + Character.toLowerCase(b) + 1) * 0x100000001B3L;
+                else this.word = 0;
+                this.partial = 1;
+                this.hashContexts();
+            }
+            this.predict();
+        }
+
+    }
+
+    /**
+     * Writes every character as 1 byte if it is below 0x80, as 2 bytes if it is below 0x4000
+     * (the first one starting with 10), and as 3 bytes otherwise (the first one is 0xC0).
+     */
+    private static byte[] toBytes(CharSequence text) {
+        byte[] bytes = new byte[text.length() * 3];
+        int size = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) bytes[size++] = (byte) c;
+            else if (c < 0x4000) {
+                bytes[size++] = (byte) (0x80 | c >>> 8);
+                bytes[size++] = (byte) c;
+            }
+            else {
+                bytes[size++] = (byte) 0xC0;
+                bytes[size++] = (byte) (c >>> 8);
+                bytes[size++] = (byte) c;
+            }
+        }
+        return Arrays.copyOf(bytes, size);
+    }
+
+    private static String toText(byte[] bytes) {
+        StringBuilder text = new StringBuilder(bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xFF;
+            if (b < 0x80) text.append((char) b);
+            else if (b < 0xC0) text.append((char) ((b & 0x3F) << 8 | bytes[++i] & 0xFF));
+            else {
+                text.append((char) ((bytes[i+1] & 0xFF) << 8 | bytes[i+2] & 0xFF));
+                i += 2;
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Encodes the text into bytes: the number of bytes of the text (4 bytes), then the coded bytes.
+     *
+     * @param text the text to encode
+     * @return the coded bytes
+     */
+    byte[] encodeBytes(CharSequence text) {
+        byte[] bytes = toBytes(text);
+        Predictor predictor = new Predictor();
+        BinaryCoder coder = BinaryCoder.encoder();
+        for (byte b : bytes) {
+            for (int i = Byte.SIZE - 1; i >= 0; i--) {
+                int bit = (b >>> i) & 1;
+                coder.encodeBit(predictor.probabilityOfZero(), bit);
+                predictor.update(bit);
+            }
+        }
+        byte[] tag = coder.finish();
+
+        byte[] coded = new byte[LENGTH_BYTES + tag.length];
+        for (int i = 0; i < LENGTH_BYTES; i++) coded[i] = (byte) (bytes.length >>> (Byte.SIZE * (LENGTH_BYTES - 1 - i)));
+        System.arraycopy(tag, 0, coded, LENGTH_BYTES, tag.length);
+        return coded;
+    }
+
+    /**
+     * Decodes bytes written by {@link ContextMixing#encodeBytes(CharSequence)}.
+     *
+     * @param coded the coded bytes
+     * @return the text
+     */
+    String decodeBytes(byte[] coded) {
+        if (coded.length < LENGTH_BYTES) return "";
+        int length = 0;
+        for (int i = 0; i < LENGTH_BYTES; i++) length = (length << Byte.SIZE) | (coded[i] & 0xFF);
+
+        byte[] bytes = new byte[length];
+        Predictor predictor = new Predictor();
+        BinaryCoder coder = BinaryCoder.decoder(coded, LENGTH_BYTES);
+        for (int j = 0; j < length; j++) {
+            int b = 0;
+            for (int i = 0; i < Byte.SIZE; i++) {
+                int bit = coder.decodeBit(predictor.probabilityOfZero());
+                predictor.update(bit);
+                b = (b << 1) | bit;
+            }
+            bytes[j] = (byte) b;
+        }
+        return toText(bytes);
+    }
+
+    /**
+     * The code of a symbol depends on its contexts, so there is no fixed coding.
+     *
+     * @param symbol any symbol
+     * @return an empty {@link String}
+     */
+    @Override
+    public String getCoding(char symbol) {
+        return "";
+    }
+
+    @Override
+    public String encode(String text) {
+        return BinaryCoder.toBits(this.encodeBytes(text));
+    }
+
+    @Override
+    public String decode(String coded) {
+        return this.decodeBytes(BinaryCoder.toBytes(coded));
+    }
+
+}
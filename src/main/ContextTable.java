@@ -0,0 +1,205 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * Holds the statistics of the contexts seen by {@link PPM}.
+ * A context is identified by a 64 bit key and owns a singly linked list of symbol records.
+ * Contexts are stored in an open-addressing hash table with linear probing
+ * and symbol records are stored in a pool of parallel primitive arrays,
+ * so there is no object per context or per symbol.
+ * The number of symbol records is capped. When the cap is reached,
+ * {@link ContextTable#isFull()} returns true and the owner should {@link ContextTable#reset()}.
+ *
+ * @see PPM
+ * @version 1.0
+ * @author 150009974
+ */
+final class ContextTable {
+
+    /**
+     * Marks a slot of {@link ContextTable#heads} that contains no context
+     * or a record that has no successor in {@link ContextTable#next}.
+     */
+    static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    private final int recordLimit;
+
+    // Contexts, indexed by slot.
+    private long[] keys;
+    private int[] heads;
+    private int[] totals;
+    private int[] distinct;
+    private int contexts;
+
+    // Symbol records, indexed by record.
+    private char[] symbols;
+    private int[] counts;
+    private int[] next;
+    private int records;
+
+    /**
+     * @param recordLimit the maximum number of (context, symbol) pairs kept at once
+     */
+    ContextTable(int recordLimit) {
+        this.recordLimit = recordLimit;
+        this.reset();
+    }
+
+    /**
+     * Forgets all contexts and shrinks the table back to its initial size.
+     */
+    void reset() {
+        int capacity = Math.min(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, recordLimit)) << 1);
+        this.keys = new long[capacity];
+        this.heads = new int[capacity];
+        this.totals = new int[capacity];
+        this.distinct = new int[capacity];
+        Arrays.fill(this.heads, NONE);
+        this.contexts = 0;
+
+        this.symbols = new char[capacity];
+        this.counts = new int[capacity];
+        this.next = new int[capacity];
+        this.records = 0;
+    }
+
+    boolean isFull() {
+        return this.records >= this.recordLimit;
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private int slotOf(long key) {
+        int mask = this.keys.length - 1;
+        int slot = hash(key) & mask;
+        while (this.heads[slot] != NONE && this.keys[slot] != key)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /**
+     * @param key the key of the context
+     * @return the slot of the context or {@link ContextTable#NONE} if it has not been seen
+     */
+    int find(long key) {
+        int slot = this.slotOf(key);
+        return this.heads[slot] == NONE ? NONE : slot;
+    }
+
+    int head(int slot) {
+        return this.heads[slot];
+    }
+
+    int total(int slot) {
+        return this.totals[slot];
+    }
+
+    int distinct(int slot) {
+        return this.distinct[slot];
+    }
+
+    int next(int record) {
+        return this.next[record];
+    }
+
+    char symbol(int record) {
+        return this.symbols[record];
+    }
+
+    int count(int record) {
+        return this.counts[record];
+    }
+
+    private void growContexts() {
+        long[] oldKeys = this.keys;
+        int[] oldHeads = this.heads;
+        int[] oldTotals = this.totals;
+        int[] oldDistinct = this.distinct;
+
+        this.keys = new long[oldKeys.length << 1];
+        this.heads = new int[oldKeys.length << 1];
+        this.totals = new int[oldKeys.length << 1];
+        this.distinct = new int[oldKeys.length << 1];
+        Arrays.fill(this.heads, NONE);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldHeads[i] == NONE) continue;
+            int slot = this.slotOf(oldKeys[i]);
+            this.keys[slot] = oldKeys[i];
+            this.heads[slot] = oldHeads[i];
+            this.totals[slot] = oldTotals[i];
+            this.distinct[slot] = oldDistinct[i];
+        }
+    }
+
+    private int newRecord(char symbol, int nextRecord) {
+        if (this.records == this.symbols.length) {
+            int capacity = Math.min(this.recordLimit, this.records << 1);
+            this.symbols = Arrays.copyOf(this.symbols, capacity);
+            this.counts = Arrays.copyOf(this.counts, capacity);
+            this.next = Arrays.copyOf(this.next, capacity);
+        }
+        this.symbols[this.records] = symbol;
+        this.counts[this.records] = 1;
+        this.next[this.records] = nextRecord;
+        return this.records++;
+    }
+
+    /**
+     * Increments the count of the symbol in the context,
+     * creating the context and the symbol record if needed.
+     * Counts are halved when the total of the context exceeds maxTotal.
+     * Does nothing when the table {@link ContextTable#isFull()}.
+     *
+     * @param key the key of the context
+     * @param symbol the symbol that occurred in the context
+     * @param maxTotal the largest total a context may have
+     */
+    void update(long key, char symbol, int maxTotal) {
+        if (this.isFull()) return;
+
+        int slot = this.slotOf(key);
+        if (this.heads[slot] == NONE) {
+            if ((this.contexts + 1) * 4 > this.keys.length * 3) {
+                this.growContexts();
+                slot = this.slotOf(key);
+            }
+            this.keys[slot] = key;
+            this.heads[slot] = this.newRecord(symbol, NONE);
+            this.totals[slot] = 1;
+            this.distinct[slot] = 1;
+            this.contexts++;
+            return;
+        }
+
+        int record = this.heads[slot];
+        while (record != NONE && this.symbols[record] != symbol)
+            record = this.next[record];
+
+        if (record == NONE) {
+            this.heads[slot] = this.newRecord(symbol, this.heads[slot]);
+            this.distinct[slot]++;
+        }
+        else this.counts[record]++;
+        this.totals[slot]++;
+
+        if (this.totals[slot] > maxTotal) {
+            int total = 0;
+            for (record = this.heads[slot]; record != NONE; record = this.next[record]) {
+                this.counts[record] = (this.counts[record] + 1) >> 1;
+                total += this.counts[record];
+            }
+            this.totals[slot] = total;
+        }
+    }
+
+}
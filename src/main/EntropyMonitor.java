@@ -0,0 +1,294 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Follows the entropy of a stream of symbols, over the last symbols only.
+ * The counts are either those of a sliding window of the last n symbols,
+ * or decay exponentially, so that a symbol seen h symbols ago counts half as much as the latest one.
+ * The entropy of counts c with total N is log(N) - sum(c*log(c))/N,
+ * and the sum only changes in the terms of the symbols added or removed,
+ * so every update takes constant time whatever the size of the alphabet.
+ * Decaying weights are scaled down every 332 half-lives or so, going through the symbols with a weight only.
+ * A weight is dropped about 1022 half-lives after it was added, so few symbols have one
+ * when the half-life is short, and the scaling also takes constant time per symbol.
+ * Listeners are told when the entropy rises above or falls below a threshold.
+ * To avoid a burst of events when the entropy hovers around a threshold,
+ * it has to move past the threshold by a margin (the hysteresis) before the state changes.
+ *
+ * @see EntropyMonitor#slidingWindow(int)
+ * @see EntropyMonitor#exponentialDecay(double)
+ * @see Listener
+ * @version 1.1
+ * @author 150009974
+ */
+public class EntropyMonitor {
+
+    /**
+     * Told when the entropy crosses a threshold.
+     */
+    public interface Listener {
+
+        /**
+         * @param entropy the current entropy in bits per symbol
+         * @param threshold the threshold which was crossed
+         * @param rising true if the entropy went above the threshold, false if it went below
+         */
+        void thresholdCrossed(double entropy, double threshold, boolean rising);
+
+    }
+
+    private static final class Threshold {
+
+        final double level;
+        final double hysteresis;
+        final Listener listener;
+        boolean above = false;
+
+        Threshold(double level, double hysteresis, Listener listener) {
+            this.level = level;
+            this.hysteresis = hysteresis;
+            this.listener = listener;
+        }
+
+    }
+
+    private static final int ALPHABET_SIZE = Character.MAX_VALUE + 1;
+    private static final double LN_2 = Math.log(2);
+    /**
+     * When the weight of the latest symbol passes this, all the weights are scaled down.
+     */
+    private static final double MAX_WEIGHT = 1e100;
+
+    private final ArrayList<Threshold> thresholds = new ArrayList<>();
+    private long count = 0;
+    /**
+     * The sum of c*ln(c) over the counts c.
+     */
+    private double sumCLnC = 0;
+
+    // Sliding window.
+    private final char[] window;
+    private final int[] counts;
+    /**
+     * cLnC[c] = c*ln(c), so that the window never computes a logarithm.
+     */
+    private final double[] cLnC;
+    private int next = 0;
+
+    // Exponential decay.
+    private final double growth;
+    private final double[] weights;
+    /**
+     * The symbols whose weight is not 0, in {@link EntropyMonitor#seen}[0, seenCount).
+     */
+    private final char[] seen;
+    private int seenCount = 0;
+    private double weight = 1;
+    private double total = 0;
+    private final double warmUp;
+
+    private EntropyMonitor(int window, double halfLife) {
+        if (window > 0) {
+            this.window = new char[window];
+            this.counts = new int[ALPHABET_SIZE];
+            this.cLnC = new double[window + 1];
+            for (int c = 1; c <= window; c++) this.cLnC[c] = c * Math.log(c);
+            this.growth = 0;
+            this.weights = null;
+            this.seen = null;
+            this.warmUp = window;
+        }
+        else {
+            this.window = null;
+            this.counts = null;
+            this.cLnC = null;
+            // Rather than multiply every weight by 2^(-1/halfLife), the next weight is multiplied by the inverse.
+            this.growth = Math.pow(2, 1.0 / halfLife);
+            this.weights = new double[ALPHABET_SIZE];
+            this.seen = new char[ALPHABET_SIZE];
+            this.warmUp = halfLife;
+        }
+    }
+
+    /**
+     * @param window the number of latest symbols to count
+     * @return a monitor of the entropy of the latest symbols
+     * @throws Exception if the window is not positive
+     */
+    public static EntropyMonitor slidingWindow(int window) throws Exception {
+        if (window <= 0) throw new Exception("Window size must be positive!");
+        return new EntropyMonitor(window, 0);
+    }
+
+    /**
+     * @param halfLife the number of symbols after which a symbol counts half as much
+     * @return a monitor of the entropy of exponentially decaying counts
+     * @throws Exception if the half-life is not positive
+     */
+    public static EntropyMonitor exponentialDecay(double halfLife) throws Exception {
+        if (!(halfLife > 0)) throw new Exception("Half-life must be positive!");
+        return new EntropyMonitor(0, halfLife);
+    }
+
+    /**
+     * @param threshold the entropy in bits per symbol to watch
+     * @param hysteresis how far past the threshold the entropy has to go to cross it
+     * @param listener told about every crossing
+     * @throws Exception if the hysteresis is negative
+     */
+    public void addListener(double threshold, double hysteresis, Listener listener) throws Exception {
+        if (hysteresis < 0) throw new Exception("Hysteresis can not be negative!");
+        this.thresholds.add(new Threshold(threshold, hysteresis, listener));
+    }
+
+    public void add(char symbol) {
+        if (this.window != null) this.addToWindow(symbol);
+        else this.addDecaying(symbol);
+        this.count++;
+        if (!this.thresholds.isEmpty() && this.isWarm()) this.checkThresholds();
+    }
+
+    public void addAll(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) this.add(text.charAt(i));
+    }
+
+    private void addToWindow(char symbol) {
+        int n = this.window.length;
+        if (this.count >= n) {
+            char old = this.window[this.next];
+            int c = this.counts[old]--;
+            this.sumCLnC += this.cLnC[c - 1] - this.cLnC[c];
+        }
+        int c = this.counts[symbol]++;
+        this.sumCLnC += this.cLnC[c + 1] - this.cLnC[c];
+        this.window[this.next] = symbol;
+        if (++this.next == n) {
+            this.next = 0;
+            this.recomputeWindowSum();
+        }
+    }
+
+    /**
+     * Sums c*ln(c) again once per window, so that rounding errors do not add up.
+     * Takes time proportional to the window, so constant time per symbol on average.
+     */
+    private void recomputeWindowSum() {
+        // Only called when the window is full.
+        double sum = 0;
+        for (int i = 0; i < this.window.length; i++) {
+            char symbol = this.window[i];
+            // Every symbol is added once, by its first occurrence in the window.
+            if (this.counts[symbol] > 0) {
+                sum += this.cLnC[this.counts[symbol]];
+                this.counts[symbol] = -this.counts[symbol];
+            }
+        }
+        for (char symbol : this.window) {
+            if (this.counts[symbol] < 0) this.counts[symbol] = -this.counts[symbol];
+        }
+        this.sumCLnC = sum;
+    }
+
+    private static double cLnC(double c) {
+        return c == 0 ? 0.0 : c * Math.log(c);
+    }
+
+    private void addDecaying(char symbol) {
+        double old = this.weights[symbol];
+        if (old == 0) this.seen[this.seenCount++] = symbol;
+        this.weights[symbol] = old + this.weight;
+        this.sumCLnC += cLnC(this.weights[symbol]) - cLnC(old);
+        this.total += this.weight;
+        this.weight *= this.growth;
+        if (this.weight > MAX_WEIGHT) this.rescale();
+    }
+
+    /**
+     * Divides the weights of the symbols seen by the weight of the next symbol,
+     * dropping the symbols whose weight becomes too small.
+     * The entropy does not depend on the scale, only rounding errors are removed.
+     */
+    private void rescale() {
+        double scale = 1 / this.weight;
+        this.sumCLnC = 0;
+        this.total = 0;
+        int kept = 0;
+        for (int i = 0; i < this.seenCount; i++) {
+            char s = this.seen[i];
+            this.weights[s] *= scale;
+            if (this.weights[s] < Double.MIN_NORMAL) {
+                this.weights[s] = 0;
+                continue;
+            }
+            this.seen[kept++] = s;
+            this.sumCLnC += cLnC(this.weights[s]);
+            this.total += this.weights[s];
+        }
+        this.seenCount = kept;
+        this.weight = 1;
+    }
+
+    /**
+     * @return whether enough symbols were seen to trust the entropy: a full window or one half-life
+     */
+    public boolean isWarm() {
+        return this.count >= this.warmUp;
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * @return the entropy of the current counts, in bits per symbol
+     */
+    public double getEntropy() {
+        double n = this.window != null ? Math.min(this.count, this.window.length) : this.total;
+        if (n == 0) return 0.0;
+        return Math.max(0.0, Math.log(n) - this.sumCLnC / n) / LN_2;
+    }
+
+    /**
+     * @param base the base of the logarithm
+     * @return the entropy of the current counts, in digits of the base per symbol
+     */
+    public double getEntropy(long base) {
+        return this.getEntropy() * LN_2 / Math.log(base);
+    }
+
+    private void checkThresholds() {
+        double entropy = this.getEntropy();
+        for (Threshold threshold : this.thresholds) {
+            if (!threshold.above && entropy > threshold.level + threshold.hysteresis) {
+                threshold.above = true;
+                threshold.listener.thresholdCrossed(entropy, threshold.level, true);
+            }
+            else if (threshold.above && entropy < threshold.level - threshold.hysteresis) {
+                threshold.above = false;
+                threshold.listener.thresholdCrossed(entropy, threshold.level, false);
+            }
+        }
+    }
+
+    /**
+     * Forgets all the symbols seen, keeping the listeners.
+     */
+    public void reset() {
+        this.count = 0;
+        this.sumCLnC = 0;
+        if (this.window != null) {
+            Arrays.fill(this.counts, 0);
+            this.next = 0;
+        }
+        else {
+            for (int i = 0; i < this.seenCount; i++) this.weights[this.seen[i]] = 0;
+            this.seenCount = 0;
+            this.weight = 1;
+            this.total = 0;
+        }
+        for (Threshold threshold : this.thresholds) threshold.above = false;
+    }
+
+}
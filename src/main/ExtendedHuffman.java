@@ -0,0 +1,247 @@
+package main;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.PriorityQueue;
+
+/**
+ * Huffman coding over an extended alphabet, whose symbols are blocks of k characters.
+ * The probability of a block is the product of the probabilities of its characters,
+ * so coding blocks spreads the rounding loss of Huffman codes over k characters
+ * and gets closer to the entropy for sources with a dominant symbol.
+ * Only the most probable blocks get their own code.
+ * They are enumerated best-first from the characters sorted by probability,
+ * so the |alphabet|^k blocks are never all created.
+ * All other blocks, and the incomplete block at the end of the text, are coded as an escape
+ * followed by the codes of the individual characters.
+ *
+ * @see Huffman
+ * @see CanonicalCode
+ * @see ExtendedHuffman#findBlocks(int)
+ * @version 1.0
+ * @author 150009974
+ */
+public class ExtendedHuffman extends CompressionTechnique {
+
+    public static final int DEFAULT_MAX_BLOCKS = 1 << 12;
+    private static final int MAX_CODE_LENGTH = 32;
+
+    private final int k;
+    private final char[] symbols;
+    private final double[] probabilities;
+    private final HashMap<Character, Integer> indexOf = new HashMap<>();
+
+    private final HashMap<String, Integer> blockIds = new HashMap<>();
+    private final String[] blocks;
+    private final int escape;
+    private final CanonicalCode blockCode;
+    private final CanonicalCode symbolCode;
+
+    /**
+     * A block, represented by the indexes of its characters in {@link ExtendedHuffman#symbols}.
+     * New blocks are created by increasing one index at or after
+     * {@link Candidate#lastIncreased}, so every block is created exactly once.
+     */
+    private static class Candidate implements Comparable<Candidate> {
+        final int[] indexes;
+        final int lastIncreased;
+        final double probability;
+
+        Candidate(int[] indexes, int lastIncreased, double probability) {
+            this.indexes = indexes;
+            this.lastIncreased = lastIncreased;
+            this.probability = probability;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Double.compare(other.probability, this.probability);
+        }
+    }
+
+    /**
+     * @param source the entries of an {@link InformationSource}, ordered from highest probability to lowest
+     * @param eod the End Of Data symbol, may be null
+     * @param k the number of characters in a block
+     * @param maxBlocks the number of blocks which get their own code
+     * @throws Exception if k or maxBlocks are not positive or the source is empty
+     */
+    public ExtendedHuffman(LinkedList<InformationSourceEntry> source, InformationSourceEntry eod,
+                           int k, int maxBlocks) throws Exception {
+        if (k < 1) throw new Exception("Block length must be positive!");
+        if (maxBlocks < 1) throw new Exception("At least one block must be coded!");
+        this.k = k;
+
+        int size = source.size() + (eod != null ? 1 : 0);
+        if (size == 0) throw new Exception("The information source is empty!");
+        this.symbols = new char[size];
+        this.probabilities = new double[size];
+        int i = 0;
+        for (InformationSourceEntry entry : source) {
+            this.symbols[i] = entry.getSymbol();
+            this.probabilities[i++] = entry.getProbability();
+        }
+        if (eod != null) {
+            this.symbols[i] = eod.getSymbol();
+            this.probabilities[i] = eod.getProbability();
+        }
+        for (i = 0; i < size; i++) this.indexOf.put(this.symbols[i], i);
+
+        LinkedList<Candidate> found = this.findBlocks(maxBlocks);
+        this.blocks = new String[found.size()];
+        double[] weights = new double[found.size() + 1];
+        double covered = 0.0;
+        i = 0;
+        for (Candidate candidate : found) {
+            StringBuilder block = new StringBuilder(k);
+            for (int index : candidate.indexes) block.append(this.symbols[index]);
+            this.blocks[i] = block.toString();
+            this.blockIds.put(this.blocks[i], i);
+            weights[i++] = candidate.probability;
+            covered += candidate.probability;
+        }
+        this.escape = i;
+        weights[this.escape] = Math.max(1.0 - covered, Double.MIN_VALUE);
+
+        this.blockCode = new CanonicalCode(CodeLengths.limited(weights, MAX_CODE_LENGTH));
+        this.symbolCode = new CanonicalCode(CodeLengths.limited(this.probabilities, MAX_CODE_LENGTH));
+    }
+
+    public ExtendedHuffman(LinkedList<InformationSourceEntry> source, InformationSourceEntry eod,
+                           int k) throws Exception {
+        this(source, eod, k, DEFAULT_MAX_BLOCKS);
+    }
+
+    private double probabilityOf(int[] indexes) {
+        double p = 1.0;
+        for (int index : indexes) p *= this.probabilities[index];
+        return p;
+    }
+
+    /**
+     * Enumerates the blocks from the most probable one down,
+     * keeping only the candidates next to the ones already taken in a {@link PriorityQueue}.
+     *
+     * @param maxBlocks the number of blocks to find
+     * @return up to maxBlocks blocks with non-zero probability, most probable first
+     */
+    private LinkedList<Candidate> findBlocks(int maxBlocks) {
+        LinkedList<Candidate> found = new LinkedList<>();
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+
+        int[] first = new int[this.k];
+        candidates.add(new Candidate(first, 0, this.probabilityOf(first)));
+
+        while (found.size() < maxBlocks && !candidates.isEmpty()) {
+            Candidate best = candidates.poll();
+            if (best.probability == 0) break;
+            found.addLast(best);
+
+            for (int j = best.lastIncreased; j < this.k; j++) {
+                int index = best.indexes[j];
+                if (index + 1 >= this.symbols.length) continue;
+                int[] next = best.indexes.clone();
+                next[j]++;
+                candidates.add(new Candidate(next, j, this.probabilityOf(next)));
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * @return the number of characters in a block
+     */
+    public int getBlockLength() {
+        return this.k;
+    }
+
+    /**
+     * @return the number of blocks which have their own code
+     */
+    public int getBlockCount() {
+        return this.blocks.length;
+    }
+
+    /**
+     * @return the average number of bits per character,
+     *         for a text drawn from the {@link InformationSource}
+     */
+    public double getAverageCodeLength() {
+        double length = 0.0;
+        double covered = 0.0;
+        for (int i = 0; i < this.blocks.length; i++) {
+            double p = 1.0;
+            for (int j = 0; j < this.k; j++)
+                p *= this.probabilities[this.indexOf.get(this.blocks[i].charAt(j))];
+            length += p * this.blockCode.getLength(i);
+            covered += p;
+        }
+
+        double symbolLength = 0.0;
+        for (int i = 0; i < this.symbols.length; i++)
+            symbolLength += this.probabilities[i] * this.symbolCode.getLength(i);
+        length += (1.0 - covered) * (this.blockCode.getLength(this.escape) + this.k * symbolLength);
+
+        return length / this.k;
+    }
+
+    /**
+     * Blocks have codes, single characters only do after an escape.
+     *
+     * @param symbol the symbol
+     * @return the code of the symbol, as written after an escape
+     */
+    @Override
+    public String getCoding(char symbol) {
+        return this.symbolCode.getCode(this.indexOf.get(symbol));
+    }
+
+    private void appendEscaped(StringBuilder coded, String text, int from, int to) {
+        coded.append(this.blockCode.getCode(this.escape));
+        for (int i = from; i < to; i++)
+            coded.append(this.symbolCode.getCode(this.indexOf.get(text.charAt(i))));
+    }
+
+    @Override
+    public String encode(String text) {
+        StringBuilder coded = new StringBuilder();
+        int l = text.length();
+        int i = 0;
+        for (; i + this.k <= l; i += this.k) {
+            Integer id = this.blockIds.get(text.substring(i, i + this.k));
+            if (id != null) coded.append(this.blockCode.getCode(id));
+            else this.appendEscaped(coded, text, i, i + this.k);
+        }
+        if (i < l) this.appendEscaped(coded, text, i, l);
+
+        return coded.toString();
+    }
+
+    @Override
+    public String decode(String coded) {
+        StringBuilder text = new StringBuilder();
+        int l = coded.length();
+        int i = 0;
+        while (i < l) {
+            int id = this.blockCode.decode(coded, i);
+            if (id < 0) break;
+            i += this.blockCode.getLength(id);
+            if (id != this.escape) {
+                text.append(this.blocks[id]);
+                continue;
+            }
+
+            // An incomplete block is only at the end, so stop when the bits do.
+            for (int j = 0; j < this.k && i < l; j++) {
+                int index = this.symbolCode.decode(coded, i);
+                if (index < 0) break;
+                i += this.symbolCode.getLength(index);
+                text.append(this.symbols[index]);
+            }
+        }
+
+        return text.toString();
+    }
+
+}
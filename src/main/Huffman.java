@@ -1,240 +1,279 @@
 package main;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.LinkedList;
-import java.util.PriorityQueue;
 
 /**
  * The Huffman coding algorithm.
- * Wraps the elements from a given {@link InformationSource} inside {@link Node}s,
- * and then builds a tree of these Nodes. The leaf nodes contain symbols.
- * The code is constructed by traversing the tree bottom to top.
+ * Keeps the symbols of a given {@link InformationSource} and their weights in arrays,
+ * ordered from lowest probability (weight) to highest, and builds the tree in place:
+ * the weights are radix sorted and merged with two queues, one of leaves and one of merged nodes,
+ * so building takes linear time and allocates no object per node, even for large alphabets.
+ * The code of a symbol is the sequence of child positions from the root to its leaf.
+ * Decoding walks a flat table of the tree, one digit at a time.
+ * Once the tree is built, coding only reads the tables, so one Huffman can serve many threads.
+ * Builds and coding calls are counted in the "huffman" {@link CoderMetrics}, or those of the technique using it,
+ * and recorded as {@link CodingEvents} when Flight Recorder is on.
  *
  * @see CompressionTechnique
  * @see InformationSource
  * @see InformationSourceEntry
- * @see Node
+ * @see CodeLengths#codes(double[], int)
  * @see Huffman#buildTree(int)
+ * @see Huffman#buildLimitedTree(int)
  * @see Huffman#getCoding(char)
  * @see Huffman#encode(String)
+ * @see CoderMetrics
+ * @see CodingEvents
  * @author 150009974
  */
 public class Huffman extends CompressionTechnique {
 
+    private static final CoderMetrics METRICS = CoderMetrics.forTechnique("huffman");
+
     /**
-     * Represents a Node in the tree-like structure used by the huffman algorithm.
-     * Nodes have a parent connection only and a parent knows its own weight.
-     * Nodes may also contain an {@link InformationSourceEntry}.
-     *
-     * @see Node#parent
-     * @see Node#weight
-     * @see InformationSourceEntry
-     * @version 2.2
+     * The symbols, ordered from lowest probability (weight) to highest.
+     * This is the reverse of the order of the {@link InformationSource}, with the EOD first.
      */
-    private static class Node implements Comparable {
-
-        /**
-         * The parent Node of this one.
-         * The root does not have a parent.
-         */
-        private Node parent;
-        private InformationSourceEntry entry;
-        private double weight = 0.0;
-        private char code;
-        private String fullCode;
-
-        double getWeight() {
-            if (this.entry != null) return this.entry.getProbability();
-            else return this.weight;
-        }
-        
-        void attachChild(Node n) {
-            this.weight += n.getWeight();
-            n.setParent(this);
-        }
-
-        private Node getParent() {
-            return this.parent;
-        }
-
-        private void setParent(Node parent) {
-            this.parent = parent;
-        }
-
-        void setCode(char code) {
-            this.code = code;
-        }
-
-        private String getCode() {
-            return this.code != 0 ? ""+this.code : "";
-        }
-        
-        private String getParentCode() {
-            return this.getParent() != null ? this.getParent().getFullCode() : "";
-        }
-
-        /**
-         * Returns the full Huffman Code for this one.
-         * That would be the sequence of codes for all parents
-         * followed by this specific Node's code.
-         * Codes are assigned when joining Nodes under a common parent.
-         *
-         * @return the full code of the node
-         * @see Huffman#merge(int)
-         */
-        String getFullCode() {
-            if (this.fullCode == null)
-                this.fullCode = this.getParentCode() + this.getCode();
-            return this.fullCode;
-        }
-
-        Node() {}
-
-        Node(InformationSourceEntry entry) throws Exception {
-            this.entry = new InformationSourceEntry(entry.getSymbol(), entry.getProbability());
-        }
-        
-        @Override
-        public int compareTo(Object other) {
-            return Double.compare(this.getWeight(), ((Node) other).getWeight());
-        }
-
-    }
-
+    private final char[] symbols;
+    private final double[] weights;
     /**
-     * Contains individual {@link Node}s with {@link InformationSourceEntry}s,
-     * ordered from lowest probability (weight) to highest.
-     * This is the reverse of the {@link InformationSource#entries} {@link PriorityQueue}.
-     * This allows for easier grouping later on.
+     * Maps a symbol to its index in {@link Huffman#symbols} plus one, 0 for symbols not in the source.
+     */
+    private final int[] indexOf;
+    /**
+     * The code of each symbol, in the order of {@link Huffman#symbols}.
      *
      * @see Huffman#buildTree(int)
-     * @see Node
      */
-    private LinkedList<Node> infoSourceAscending = new LinkedList<>();
+    private String[] codes;
     /**
-     * Maps a symbol to its leaf {@link Node}, which is a Node within the final tree,
-     * constructed by the Huffman algorithm. This mapping allows traversing trees bottom to top.
+     * The number of digits of the codes.
+     */
+    private int base = 2;
+    private double bitsPerDigit = 1.0;
+    /**
+     * The tree for decoding: node k has its children at k*base to k*base+base-1,
+     * holding the index of an inner node, ~i for the leaf of symbol i, or 0 where there is no child.
+     * The root is node 0.
      *
-     * @see Huffman#buildTree(int)
-     * @see Node
+     * @see Huffman#decode(String)
      */
-    private HashMap<Character, Node> charToCode = new HashMap<>();
-    private HashMap<String, Character> codeToChar = new HashMap<>();
+    private int[] decoder;
     /**
-     * Contains {@link Node}s which may be parents and keeps them ordered by {@link Node#weight}.
-     * This is used as a helper queue when grouping.
+     * How much longer the codes are on average, because of the length limit.
      *
-     * @see Huffman#buildTree(int)
-     * @see Node
+     * @see Huffman#buildLimitedTree(int)
+     */
+    private double lengthLimitCost = 0.0;
+    /**
+     * Where the builds and coding calls are counted, with the entropy and average code length of the tree.
      */
-    private PriorityQueue<Node> trees = new PriorityQueue<>();
+    private final CoderMetrics metrics;
+    private double entropy = 0.0;
+    private double averageCodeLength = 0.0;
+
+    /**
+     * @param model the frozen entries and EOD to build the code for
+     * @throws Exception if the entries can not be copied
+     */
+    public Huffman(SourceSnapshot model) throws Exception {
+        this(model.toLinkedList(), model.getEOD());
+    }
 
     public Huffman(LinkedList<InformationSourceEntry> source, InformationSourceEntry eod) throws Exception {
+        this(source, eod, METRICS);
+    }
+
+    /**
+     * @param metrics where to count the builds and coding calls, when the code works for another technique
+     */
+    Huffman(LinkedList<InformationSourceEntry> source, InformationSourceEntry eod, CoderMetrics metrics) {
+        this.metrics = metrics;
+        int size = source.size() + (eod != null ? 1 : 0);
+        this.symbols = new char[size];
+        this.weights = new double[size];
+        
+        int i = size;
+        int maxSymbol = -1;
         for (InformationSourceEntry entry : source) {
-            Node n = new Node(entry);
-            this.infoSourceAscending.push(n);
-            this.charToCode.put(entry.getSymbol(), n);
+            i--;
+            this.symbols[i] = entry.getSymbol();
+            this.weights[i] = entry.getProbability();
+            maxSymbol = Math.max(maxSymbol, entry.getSymbol());
         }
-
         if (eod != null) {
-            Node n = new Node(eod);
-            this.infoSourceAscending.push(n);
-            this.charToCode.put(eod.getSymbol(), n);
+            this.symbols[0] = eod.getSymbol();
+            this.weights[0] = eod.getProbability();
+            maxSymbol = Math.max(maxSymbol, eod.getSymbol());
         }
 
+        this.indexOf = new int[maxSymbol + 1];
+        for (i = 0; i < size; i++) this.indexOf[this.symbols[i]] = i + 1;
     }
-    
-    private Node popLeast() {
-        
-        if (this.infoSourceAscending.isEmpty()) return this.trees.poll();
-        else if (this.trees.isEmpty()) return this.infoSourceAscending.pollFirst();
-        // If both are empty, the first if will return null.
-        
-        double fromSource = this.infoSourceAscending.peekFirst().getWeight();
-        double fromTrees = this.trees.peek().getWeight();
-        
-        return fromSource < fromTrees ? this.infoSourceAscending.pollFirst() : this.trees.poll();
-        
+
+    /**
+     * Builds the tree, combining the n least weighted nodes at each step until one node is left.
+     * That node is the root, and each step decreases the number of nodes by (n-1).
+     * The first step combines fewer nodes, so that
+     * the remaining number of nodes -1 (the root at the end) is divisible by (n-1).
+     *
+     * @param n the number of nodes to combine at each step after the first
+     * @see CodeLengths#codes(double[], int)
+     */
+    public void buildTree(int n) {
+        Object event = CodingEvents.beginBuild();
+        long start = System.nanoTime();
+        this.base = n;
+        this.codes = CodeLengths.codes(this.weights, n);
+        this.buildDecoder();
+        this.recordBuild(start, event);
     }
 
     /**
-     * Combines k {@link Node}s into one.
-     * Creates a new empty Node and attaches the k least weighted Nodes to it, as children.
-     * When each child is attached, its connection to the parent is given a single character code.
-     * The sequence of codes from the root to a leaf is the encoding of the symbol at the leaf.
+     * Builds binary codes, none of which is longer than maxLength.
+     * The code lengths are the optimal ones under that limit, found by the package-merge algorithm,
+     * and the codes are assigned canonically. Bounding the code length
+     * bounds the work needed to decode each symbol, at the cost of a slightly longer output.
+     * That cost is available from {@link Huffman#getLengthLimitCost()} afterwards.
      *
-     * @param k number of {@link Node}s to merge
-     * @see Node
-     * @see Node#attachChild(Node)
+     * @param maxLength the longest allowed code length
+     * @throws Exception if there are more than 2^maxLength symbols
+     * @see CodeLengths#limited(double[], int)
      */
-    private void merge(int k) {
-        if (k == 0 || k == 1) return;
-        
-        Node r = new Node();
-        for (int i = 0; i < k ; i ++) {
-            Node x = this.popLeast();
-            if (x == null) break;  // Out of elements, nothing to do.
-            x.setCode((char)('0'+i));
-            r.attachChild(x);
+    public void buildLimitedTree(int maxLength) throws Exception {
+        Object event = CodingEvents.beginBuild();
+        long start = System.nanoTime();
+        int[] lengths = CodeLengths.limited(this.weights, maxLength);
+        this.base = 2;
+        this.codes = CodeLengths.canonical(lengths);
+        this.buildDecoder();
+        this.recordBuild(start, event);
+
+        int[] unlimited = CodeLengths.optimal(this.weights);
+        double limitedSum = 0.0, unlimitedSum = 0.0;
+        for (int i = 0; i < this.weights.length; i++) {
+            limitedSum += this.weights[i] * lengths[i];
+            unlimitedSum += this.weights[i] * unlimited[i];
         }
+        this.lengthLimitCost = unlimitedSum == 0 ? 0.0 : limitedSum/unlimitedSum - 1;
+    }
 
-        this.trees.add(r);
+    private void recordBuild(long start, Object event) {
+        this.bitsPerDigit = Math.log(this.base) / Math.log(2);
+        this.entropy = CoderMetrics.entropy(this.weights);
+        this.averageCodeLength = this.getAverageCodeLength();
+        this.metrics.recordBuild(System.nanoTime() - start);
+        if (CodingEvents.shouldCommit(event))
+            CodingEvents.commitBuild(event, "huffman", this.symbols.length, this.base);
     }
 
     /**
-     * Combines {@link Node}s to build a tree, until exactly one Node is left.
-     * That Node is the root, at each step after the first n Nodes are combined into 1,
-     * resulting a (n-1) decrease of the total number of Nodes.
-     * The first step combines such a number of Nodes so that
-     * the remaining number of Nodes -1 (the root at the end) is divisible by (n-1).
+     * Fills {@link Huffman#decoder} by following the digits of every code from the root.
+     */
+    private void buildDecoder() {
+        int[] next = new int[(this.symbols.length + 1) * this.base];
+        int nodes = 1;
+        for (int i = 0; i < this.codes.length; i++) {
+            String code = this.codes[i];
+            int node = 0;
+            for (int j = 0; j < code.length() - 1; j++) {
+                int slot = node * this.base + code.charAt(j) - '0';
+                if (next[slot] == 0) {
+                    if ((nodes + 1) * this.base > next.length) next = Arrays.copyOf(next, 2 * next.length);
+                    next[slot] = nodes++;
+                }
+                node = next[slot];
+            }
+            next[node * this.base + code.charAt(code.length() - 1) - '0'] = ~i;
+        }
+        this.decoder = Arrays.copyOf(next, nodes * this.base);
+    }
+
+    /**
+     * @return the average length of the codes, weighted by the probabilities of the symbols
+     */
+    public double getAverageCodeLength() {
+        if (this.codes == null) return 0.0;
+        double lengthSum = 0.0, weightSum = 0.0;
+        for (int i = 0; i < this.codes.length; i++) {
+            lengthSum += this.weights[i] * this.codes[i].length();
+            weightSum += this.weights[i];
+        }
+        return weightSum == 0 ? 0.0 : lengthSum/weightSum;
+    }
+
+    /**
+     * Returns how much longer the output is because of the code length limit,
+     * as a fraction of the output without the limit.
+     * For example 0.01 means the output is 1% longer, i.e. the compression ratio is about 1% lower.
      *
-     * @param n the number of nodes to combine at each step after the first
-     * @see Huffman#merge(int)
-     * @see Node
+     * @return the relative increase of the average code length, 0 if no limit was used
+     * @see Huffman#buildLimitedTree(int)
      */
-    public void buildTree(int n) {
-        int excess = (this.infoSourceAscending.size()-1)%(n-1);
-        if (excess != 0) merge(excess+1);
-        while (!this.infoSourceAscending.isEmpty() || this.trees.size() > 1) merge(n);
-        
-        this.charToCode.forEach((c, node) -> this.codeToChar.put(node.getFullCode(), c));
+    public double getLengthLimitCost() {
+        return this.lengthLimitCost;
     }
 
     @Override
     public String getCoding(char symbol) {
-        return this.charToCode.get(symbol).getFullCode();
+        int index = symbol < this.indexOf.length ? this.indexOf[symbol] : 0;
+        return index == 0 ? null : this.codes[index - 1];
     }
     
     @Override
     public String encode(String text) {
         
         StringBuilder coded = new StringBuilder();
-        int l = text.length();
-        for (int i = 0; i < l; i ++)
-            coded.append(this.charToCode.get(text.charAt(i)).getFullCode());
-
+        this.encodeTo(text, coded);
         return coded.toString();
         
     }
+
+    @Override
+    protected void encodeTo(CharSequence text, StringBuilder out) {
+        Object event = CodingEvents.beginEncode();
+        long start = System.nanoTime();
+        int digits = out.length();
+        int l = text.length();
+        for (int i = 0; i < l; i ++) {
+            String code = this.getCoding(text.charAt(i));
+            if (code == null)
+                throw new IllegalArgumentException("Symbol '" + text.charAt(i) + "' is not in the source!");
+            out.append(code);
+        }
+        this.metrics.recordEncode(System.nanoTime() - start, l, (out.length() - digits) * this.bitsPerDigit,
+                this.entropy, this.averageCodeLength);
+        if (CodingEvents.shouldCommit(event))
+            CodingEvents.commitEncode(event, "huffman", l, out.length() - digits);
+    }
     
     @Override
     public String decode(String coded) {
         
         StringBuilder text = new StringBuilder();
-        int l = coded.length();
-        for (int i = 0; i < l; i++) {
-            String buffer = "" + coded.charAt(i);
-            Character c = this.codeToChar.get(buffer);
-            while (c == null) {
-                i++;
-                buffer += coded.charAt(i);
-                c = this.codeToChar.get(buffer);
-            }
-            text.append(c);
-        }
-        
+        this.decodeTo(coded, 0, coded.length(), text);
         return text.toString();
         
     }
 
+    @Override
+    protected void decodeTo(CharSequence coded, int from, int to, StringBuilder out) {
+        Object event = CodingEvents.beginDecode();
+        int characters = out.length();
+        long start = System.nanoTime();
+        int node = 0;
+        for (int i = from; i < to; i++) {
+            int child = this.decoder[node * this.base + coded.charAt(i) - '0'];
+            if (child < 0) {
+                out.append(this.symbols[~child]);
+                node = 0;
+            }
+            else node = child;
+        }
+        this.metrics.recordDecode(System.nanoTime() - start);
+        if (CodingEvents.shouldCommit(event))
+            CodingEvents.commitDecode(event, "huffman", to - from, out.length() - characters);
+    }
+
 }
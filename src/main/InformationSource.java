@@ -1,18 +1,20 @@
 package main;
 
-import java.util.HashMap;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.LinkedList;
-import java.util.NoSuchElementException;
-import java.util.PriorityQueue;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 /**
  * The {@link InformationSource} contains the alphabet and the probabilities of each symbol.
- * They are stored as {@link InformationSourceEntry}-s in a {@link PriorityQueue}.
+ * They are stored in arrays indexed by symbol, so finding, adding and removing a symbol take constant time.
+ * The entries sorted by probability are only computed again when they are needed after a change.
  *
  * @see InformationSourceEntry
- * @see InformationSource#entries
- * @version 2.3
+ * @see InformationSource#entryOf
+ * @see InformationSource#sorted
+ * @version 3.1
  * @author 150009974
  */
 public class InformationSource {
@@ -22,77 +24,116 @@ public class InformationSource {
      * This constant is used to account for said loss.
      */
     private static final double PRECISION = 0.000000000001;
+    private static final int INITIAL_CAPACITY = 1 << 7;
+    private static final int ALPHABET_SIZE = Character.MAX_VALUE + 1;
+    /**
+     * Most common to least common, ties by symbol.
+     */
+    private static final Comparator<InformationSourceEntry> BY_PROBABILITY =
+            (a, b) -> a.compareTo(b) != 0 ? a.compareTo(b) : Character.compare(a.getSymbol(), b.getSymbol());
     
     private static final int CANNOT = 0;
     private static final int CAN_IS_NOT = 1;
     private static final int CAN_IS = 2;
-    private static int canBeEOD(char potential, String text, HashMap<Character, Integer> counts) {
-        Integer occurrences = counts.get(potential);
-        if (occurrences == null || occurrences == 0) return CAN_IS_NOT;
+    private static int canBeEOD(char potential, String text, int[] counts) {
+        int occurrences = counts[potential];
+        if (occurrences == 0) return CAN_IS_NOT;
         if (occurrences > 1) return CANNOT;
         // occurrences == 1
         return text.charAt(text.length()-1) == potential ? CAN_IS : CANNOT;
     }
     
-    public static InformationSource estimateFromText(String text) {
-        HashMap<Character, Integer> counts = new HashMap<>();
-        for (Character c : text.toCharArray()) {
-            Integer soFar = counts.get(c);
-            counts.put(c, 1 + (soFar == null ? 0 : soFar));
-        }
+    /**
+     * Picks the End Of Data symbol of a text: the first character which either does not occur,
+     * or only occurs once, as the last character of the text.
+     *
+     * @param text the text
+     * @param counts the occurrences of every character in the text
+     * @return the EOD, or -1 if no character can be one
+     * @see InformationSource#estimateFromText(String)
+     */
+    static int chooseEOD(String text, int[] counts) {
+        for (int potential = 0; potential <= Character.MAX_VALUE; potential++)
+            if (canBeEOD((char) potential, text, counts) != CANNOT) return potential;
+        return -1;
+    }
         
-        char endOfData = 0;
-        int canBe = canBeEOD(endOfData, text, counts);
-        // Find unused character.
-        while (canBe == CANNOT && endOfData < Character.MAX_VALUE) {
-            endOfData ++;
-            canBe = canBeEOD(endOfData, text, counts);
-        }
+    public static InformationSource estimateFromText(String text) {
+        Object event = CodingEvents.beginEstimate();
+        int[] counts = new int[ALPHABET_SIZE];
+        for (int i = 0; i < text.length(); i++) counts[text.charAt(i)]++;
         
+        int endOfData = chooseEOD(text, counts);
         // Better not reach this case.
-        if (canBe == CANNOT)  // When all Characters occur in the text more than once.
+        if (endOfData < 0)  // When all Characters occur in the text more than once.
             System.err.println("No character can be used as EOD.");
         
-        counts.remove(endOfData);
-        if (canBe == CAN_IS_NOT)
-            text = text + endOfData;
-        
-        final int length = text.length();
+        final int length = text.length() + (endOfData >= 0 && counts[endOfData] == 0 ? 1 : 0);
+        if (endOfData >= 0) counts[endOfData] = 0;
         InformationSource expected = new InformationSource();
-        counts.forEach((symbol, occurrences) -> {
+        for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+            if (counts[symbol] == 0) continue;
             try {
-                expected.addEntry(symbol, 1.0*occurrences/length);
+                expected.addEntry((char) symbol, 1.0*counts[symbol]/length);
             }
             catch (Exception ex) {
                 ex.printStackTrace();
                 System.err.println("The estimation was not supposed to throw exceptions.");
             }
-        });
+        }
 
-        if (canBe != CANNOT) expected.setEOD(endOfData);
+        if (endOfData >= 0) expected.setEOD((char) endOfData);
 
+        if (CodingEvents.shouldCommit(event))
+            CodingEvents.commitEstimate(event, text.length(), expected.size() + (endOfData >= 0 ? 1 : 0));
         return expected;
     }
     
     /**
-     * Contains all the entries in the information source. 
-     * the {@link PriorityQueue} is sorted most common to least common,
-     * so that text generation is faster. 
-     * When compressing, copy into a {@link LinkedList}.
+     * The entry of every symbol in the {@link InformationSource}, null for the others.
+     * Grows with the largest symbol added.
      *
      * @see InformationSourceEntry
      */
-    private final PriorityQueue<InformationSourceEntry> entries = new PriorityQueue<>();
+    private InformationSourceEntry[] entryOf = new InformationSourceEntry[INITIAL_CAPACITY];
     /**
-     * Contains references to the same objects as in {@link InformationSource#entries} but
-     * adding always pushes to the front of the list and popping pops from the front, thus
-     * simulating a stack.
-     *
-     * @see InformationSource#entries
-     * @see InformationSourceEntry
+     * The probability of every symbol, 0 for the symbols which are not in the {@link InformationSource}.
+     */
+    private double[] probabilities = new double[INITIAL_CAPACITY];
+    /**
+     * Bit s is set if and only if symbol s is in the {@link InformationSource}.
+     */
+    private long[] present = new long[INITIAL_CAPACITY / Long.SIZE];
+    private int size = 0;
+    /**
+     * The entries from most common to least common, or null if they changed since they were last sorted.
+     */
+    private InformationSourceEntry[] sorted = new InformationSourceEntry[0];
+    /**
+     * Draws the symbols for {@link InformationSource#generateText(int, long)},
+     * or null if the entries changed since it was built.
+     */
+    private AliasSampler sampler;
+    /**
+     * The frozen copy of the entries handed out by {@link InformationSource#snapshot()},
+     * or null if the entries or the EOD changed since it was taken.
+     */
+    private SourceSnapshot snapshot;
+    /**
+     * The symbols in the order they were added, simulating a stack.
+     * A symbol which was removed or added again since is skipped when popping,
+     * as its stamp no longer matches the one in {@link InformationSource#stampOf}.
      */
-    private final LinkedList<InformationSourceEntry> entriesReverseOrder = new LinkedList<>();
+    private char[] addedSymbols = new char[INITIAL_CAPACITY];
+    private int[] addedStamps = new int[INITIAL_CAPACITY];
+    private int added = 0;
+    private int[] stampOf = new int[INITIAL_CAPACITY];
+    private int nextStamp = 1;
     private double sum = 0;
+    /**
+     * The sum of p*ln(1/p) over the entries, kept up to date so that the entropy takes constant time.
+     */
+    private double information = 0;
     private boolean lastEntryWasUpdate = false;
     private InformationSourceEntry eod;
     private boolean lastEntryWasEOD = false;
@@ -100,38 +141,137 @@ public class InformationSource {
     private Character existingToEOD;
 
     /**
-     * Copies the elements of the {@link InformationSource#entries} in a {@link LinkedList},
-     * such that the {@link InformationSourceEntry}s in the returned list are in the same order
-     * as are the ones in the {@link InformationSource#entries} {@link PriorityQueue}.
+     * Copies the entries in a {@link LinkedList}, from most common to least common.
+     * The returned {@link InformationSourceEntry}s are copies,
+     * so changing them does not change the {@link InformationSource}.
      *
      * @return a {@link LinkedList} of {@link InformationSourceEntry}s
      */
     public LinkedList<InformationSourceEntry> toLinkedList() {
         LinkedList<InformationSourceEntry> orderedList = new LinkedList<>();
-
-        while (this.size() != 0)
-            orderedList.addLast(this.pollEntry());
-
-        orderedList.forEach((entry) -> {
-            // This iteration preserves the order. Thus, insertion time is constant.
+        for (InformationSourceEntry entry : this.getSorted()) {
             try {
-                this.addEntry(entry.getSymbol(), entry.getProbability());
+                orderedList.addLast(new InformationSourceEntry(entry.getSymbol(), entry.getProbability()));
             }
             catch (Exception ex) {
                 ex.printStackTrace();
                 System.err.println("Copied elements were supposed to be valid!");
             }
-        });
-        
+        }
         return orderedList;
     }
+        
+    /**
+     * Takes an immutable copy of the entries and the EOD, which can be shared between threads.
+     * The same snapshot is returned until the source changes.
+     *
+     * @return the snapshot of the current entries
+     * @see SourceSnapshot
+     */
+    public SourceSnapshot snapshot() {
+        if (this.snapshot == null) this.snapshot = new SourceSnapshot(this.getSorted(), this.eod);
+        return this.snapshot;
+    }
+
+    /**
+     * @return the entries from most common to least common, sorting them if they changed
+     */
+    private InformationSourceEntry[] getSorted() {
+        if (this.sorted != null) return this.sorted;
+        InformationSourceEntry[] entries = new InformationSourceEntry[this.size];
+        int i = 0;
+        for (int word = 0; word < this.present.length; word++)
+            for (long bits = this.present[word]; bits != 0; bits &= bits - 1)
+                entries[i++] = this.entryOf[word * Long.SIZE + Long.numberOfTrailingZeros(bits)];
+        Arrays.sort(entries, BY_PROBABILITY);
+        this.sorted = entries;
+        return entries;
+    }
+
+    private boolean contains(char symbol) {
+        return symbol < this.entryOf.length && (this.present[symbol / Long.SIZE] & (1L << symbol)) != 0;
+    }
+
+    /**
+     * Makes the arrays indexed by symbol large enough for the symbol.
+     */
+    private void ensureCapacity(char symbol) {
+        if (symbol < this.entryOf.length) return;
+        int capacity = Math.min(ALPHABET_SIZE, Integer.highestOneBit(symbol) << 1);
+        this.entryOf = Arrays.copyOf(this.entryOf, capacity);
+        this.probabilities = Arrays.copyOf(this.probabilities, capacity);
+        this.present = Arrays.copyOf(this.present, capacity / Long.SIZE);
+        this.stampOf = Arrays.copyOf(this.stampOf, capacity);
+    }
+
+    private void push(char symbol) {
+        if (this.added == this.addedSymbols.length) {
+            // Drop the symbols which were removed or added again, if they take up most of the stack.
+            if (this.added > 2 * this.size) {
+                int kept = 0;
+                for (int i = 0; i < this.added; i++) {
+                    char s = this.addedSymbols[i];
+                    if (this.contains(s) && this.stampOf[s] == this.addedStamps[i]) {
+                        this.addedSymbols[kept] = s;
+                        this.addedStamps[kept++] = this.addedStamps[i];
+                    }
+                }
+                this.added = kept;
+            }
+            if (this.added == this.addedSymbols.length) {
+                this.addedSymbols = Arrays.copyOf(this.addedSymbols, this.added * 2);
+                this.addedStamps = Arrays.copyOf(this.addedStamps, this.added * 2);
+            }
+        }
+        this.stampOf[symbol] = this.nextStamp;
+        this.addedSymbols[this.added] = symbol;
+        this.addedStamps[this.added++] = this.nextStamp++;
+    }
+
+    private void insert(InformationSourceEntry entry) {
+        char symbol = entry.getSymbol();
+        double p = entry.getProbability();
+        this.ensureCapacity(symbol);
+        this.entryOf[symbol] = entry;
+        this.probabilities[symbol] = p;
+        this.present[symbol / Long.SIZE] |= 1L << symbol;
+        this.size++;
+        this.sum += p;
+        this.information += p*Math.log(1.0/p);
+        this.sorted = null;
+        this.sampler = null;
+        this.snapshot = null;
+        this.push(symbol);
+    }
+
+    private InformationSourceEntry delete(char symbol) {
+        InformationSourceEntry entry = this.entryOf[symbol];
+        double p = this.probabilities[symbol];
+        this.entryOf[symbol] = null;
+        this.probabilities[symbol] = 0;
+        this.present[symbol / Long.SIZE] &= ~(1L << symbol);
+        this.size--;
+        this.sorted = null;
+        this.sampler = null;
+        this.snapshot = null;
+        if (this.size == 0) {
+            // Start again from exactly 0, so that rounding errors do not add up.
+            this.sum = 0;
+            this.information = 0;
+        }
+        else {
+            this.sum -= p;
+            this.information -= p*Math.log(1.0/p);
+        }
+        return entry;
+    }
 
     private double getSum() {
         return this.sum;
     }
     
     public int size() {
-        return this.entries.size();
+        return this.size;
     }
     
     public boolean lastEntryWasUpdate() {
@@ -149,15 +289,14 @@ public class InformationSource {
             this.lastEntryWasUpdate = true;
             lastEOD = eod.getSymbol();
             eod = null;
+            this.snapshot = null;
         }
         InformationSourceEntry latest = new InformationSourceEntry(symbol, probability);
         
         if (this.sum + latest.getProbability() > 1 + PRECISION)
             throw new Exception("Adding Entry: Attempting to increase probability sum beyond 1!");
         
-        this.entriesReverseOrder.push(latest);
-        this.entries.add(latest);
-        this.sum += latest.getProbability();
+        this.insert(latest);
         this.lastEntryWasEOD = false;
         
         return latest;
@@ -179,6 +318,7 @@ public class InformationSource {
             System.err.println("Static Entry Creation should be valid");
         }
         this.lastEntryWasEOD = true;
+        this.snapshot = null;
         return this.eod;
     }
     
@@ -196,104 +336,115 @@ public class InformationSource {
     
     public InformationSourceEntry getEntryFor(char symbol) {
         if (eod != null && symbol == eod.getSymbol()) return eod;
-        
-        for (InformationSourceEntry entry : this.entriesReverseOrder)
-            if (entry.getSymbol() == symbol) return entry;
-        
-        return null;
+        return this.contains(symbol) ? this.entryOf[symbol] : null;
     }
 
-    private InformationSourceEntry pollEntry() {
-        InformationSourceEntry entry = this.entries.poll();
-        if (entry != null) {
-            this.entriesReverseOrder.remove(entry);
-            this.sum -= entry.getProbability();
-        }
-        return entry;
-    }
-    
+    /**
+     * Removes the EOD if it was the latest change, otherwise the latest added entry still in the source.
+     *
+     * @return the removed symbol, or 0 if there was nothing to remove
+     */
     public char removeLatestEntry() {
-        if (lastEntryWasEOD) {
+        if (lastEntryWasEOD && eod != null) {
             char e = eod.getSymbol();
             eod = null;
+            this.snapshot = null;
+            lastEntryWasEOD = false;
             
             return e;
         }
-        try {
-            InformationSourceEntry entry = this.entriesReverseOrder.pop();
-            this.entries.remove(entry);
-            this.sum -= entry.getProbability();
-            return entry.getSymbol();
-        }
-        catch (NoSuchElementException e) {
-            return 0;
+        while (this.added > 0) {
+            char symbol = this.addedSymbols[--this.added];
+            if (this.contains(symbol) && this.stampOf[symbol] == this.addedStamps[this.added])
+                return this.delete(symbol).getSymbol();
         }
+        return 0;
     }
     
     public boolean removeEntryFor(char symbol) {
-        InformationSourceEntry entry = getEntryFor(symbol);
-        
-        if (entry != null) {
-            if (entry == eod) {
-                eod = null;
-                return true;  // return early
-            }
-            
-            this.entriesReverseOrder.remove(entry);
-            this.entries.remove(entry);
-            this.sum -= entry.getProbability();
-            return true;
+        if (eod != null && symbol == eod.getSymbol()) {
+            eod = null;
+            this.snapshot = null;
+            return true;  // return early
         }
-        return false;
+        if (!this.contains(symbol)) return false;
+        this.delete(symbol);
+        return true;
     }
     
-    private char getSymbolFromRoll(LinkedList<InformationSourceEntry> list, double roll) throws Exception {
-        
-        // Accounts for precision loss. See end of function.
+    /**
+     * @return the sampler of the entries, building it if they changed
+     * @throws Exception if the probabilities do not add up to 1
+     */
+    AliasSampler getSampler() throws Exception {
+        // Accounts for precision loss.
         if (1 - this.getSum() > PRECISION)
             throw new Exception("Sum of probabilities " + this.getSum() + " is not 1!\n"+
                     "Add more symbols with a sum of probabilities " + (1-this.getSum()));
         
-        if (roll > 1) roll /= 100.0;
-        if (roll < 0 || roll >= 1)
-            throw new Exception("Invalid Probability! " + roll +" is not within [0; 1)");
-
-        // Add EOD to the list.
-        if (this.eod != null) list.addLast(this.eod);
-
-        for (InformationSourceEntry entry : list) {
-            if (entry.getProbability() >= roll) {
-                // Remove inserted EOD from the list.
-                if (this.eod != null) list.pollLast();
-                return entry.getSymbol();
-            }
-            roll -= entry.getProbability();
+        if (this.sampler == null) {
+            char[] symbols = new char[this.size];
+            double[] weights = new double[this.size];
+            int i = 0;
+            for (int word = 0; word < this.present.length; word++)
+                for (long bits = this.present[word]; bits != 0; bits &= bits - 1, i++) {
+                    symbols[i] = (char) (word * Long.SIZE + Long.numberOfTrailingZeros(bits));
+                    weights[i] = this.probabilities[symbols[i]];
+                }
+            this.sampler = new AliasSampler(symbols, weights);
         }
+        return this.sampler;
+    }
 
-        if (this.eod != null) list.pollLast();
-        throw new NoSuchElementException("");
-
+    /**
+     * Generates a text with the probabilities of the source, followed by the EOD if there is one.
+     * The EOD is not drawn within the text, as its probability is the smallest double.
+     * Chunks of the text are generated in parallel.
+     *
+     * @param len the length of the text without the EOD
+     * @param seed the seed of the random generator; the same seed gives the same text
+     * @return the generated text
+     * @throws Exception if the probabilities do not add up to 1
+     */
+    public String generateText(int len, long seed) throws Exception {
+        String text = new String(ChunkedGenerator.generate(this.getSampler(), len, seed));
+        return text + (eod != null ? eod.getSymbol() : "");
     }
     
+    /**
+     * Streams a text with the probabilities of the source, followed by the EOD if there is one.
+     * The text is the same as the one {@link InformationSource#generateText(int, long)} returns for the seed,
+     * but it can be longer than fits in memory.
+     *
+     * @param len the length of the text without the EOD
+     * @param seed the seed of the random generator
+     * @param out where to write the text
+     * @throws Exception if the probabilities do not add up to 1 or writing fails
+     */
+    public void writeText(long len, long seed, Writer out) throws Exception {
+        ChunkedGenerator.write(this.getSampler(), len, seed, out);
+        if (eod != null) out.write(eod.getSymbol());
+        out.flush();
+    }
+
+    public String generateText(int len) throws Exception {
+        return this.generateText(len, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * @param list not used any more, the entries of the source are used instead
+     * @param len the length of the text without the EOD
+     * @return the generated text
+     * @throws Exception if the probabilities do not add up to 1
+     * @deprecated the list is ignored, use {@link InformationSource#generateText(int)}
+     */
+    @Deprecated
     public String generateText(LinkedList<InformationSourceEntry> list, int len) throws Exception {
-        StringBuilder text = new StringBuilder();
-        Random r = new Random();
-        
-        for (int i = 0; i < len; i++)
-            text.append(this.getSymbolFromRoll(list, r.nextDouble()));
-            
-        return text.toString() + (eod != null ? eod.getSymbol() : "");
+        return this.generateText(len);
     }
 
     public double calculateEntropy(long base) {
-        double h = 0.0;
-        for (InformationSourceEntry entry : entries) {
-            double p = entry.getProbability();
-            double log = Math.log(1.0/p);
-            h += p*log;
-        }
-        h /= Math.log(base);
-        return h;
+        return this.information / Math.log(base);
     }
     
 }
@@ -0,0 +1,253 @@
+package main;
+
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * The LZSS dictionary algorithm followed by an entropy coder, like deflate.
+ * Repeated phrases are replaced by a (length, distance) pair pointing back into the text.
+ * The literals and the length and distance slots become tokens,
+ * which are coded with {@link Huffman} or {@link Arithmetic} through a {@link TokenCoder}.
+ * Lengths and distances are split into a slot (a token) and extra bits (stored as they are).
+ * Length and distance slots are represented by characters which do not occur in the text.
+ * The coded text is laid out as: the length of the entropy coded part (32 bits),
+ * the entropy coded tokens and finally all the extra bits.
+ * Like {@link Arithmetic}, the models built while encoding are kept for decoding.
+ *
+ * @see MatchFinder
+ * @see TokenCoder
+ * @see LZSS#LEVELS
+ * @version 1.0
+ * @author 150009974
+ */
+public class LZSS extends CompressionTechnique {
+
+    public static final int DEFAULT_LEVEL = 6;
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 15;
+    public static final int MAX_WINDOW_SIZE = 1 << 20;
+    private static final int LENGTH_FIELD = Integer.SIZE;
+
+    /**
+     * Speed versus ratio presets, indexed by level.
+     * Each one holds the chain depth, whether lazy matching is used (1) or not (0)
+     * and the length of a match which is good enough to stop searching.
+     * Level 0 does not search for matches at all.
+     */
+    private static final int[][] LEVELS = {
+        {0, 0, 0},
+        {4, 0, 8},
+        {8, 0, 16},
+        {32, 0, 32},
+        {16, 1, 16},
+        {32, 1, 32},
+        {128, 1, 128},
+        {256, 1, MatchFinder.MAX_MATCH},
+        {1024, 1, MatchFinder.MAX_MATCH},
+        {4096, 1, MatchFinder.MAX_MATCH}
+    };
+
+    private final int chainDepth;
+    private final boolean lazy;
+    private final int niceLength;
+    private final int windowSize;
+    private final String backEnd;
+
+    // Built while encoding, used while decoding.
+    private TokenCoder tokenCoder;
+    private BitSet literals = new BitSet();
+    private char[] lengthSymbols;
+    private char[] distanceSymbols;
+    /**
+     * Maps a slot symbol to its slot.
+     * Length slots are stored as they are and distance slots as -(slot+1).
+     */
+    private HashMap<Character, Integer> slotOfSymbol = new HashMap<>();
+
+    /**
+     * @param level from 0 (fastest) to 9 (best ratio), see {@link LZSS#LEVELS}
+     * @param windowSize how far back matches can start, a power of 2 up to {@link LZSS#MAX_WINDOW_SIZE}
+     * @param backEnd the entropy coder, "huffman" or "arithmetic"
+     * @throws Exception if any of the parameters is out of range
+     */
+    public LZSS(int level, int windowSize, String backEnd) throws Exception {
+        if (level < 0 || level >= LEVELS.length)
+            throw new Exception("LZSS level must be between 0 and " + (LEVELS.length-1) + "!");
+        if (Integer.bitCount(windowSize) != 1 || windowSize < 256 || windowSize > MAX_WINDOW_SIZE)
+            throw new Exception("LZSS window must be a power of 2 between 256 and " + MAX_WINDOW_SIZE + "!");
+        if (!backEnd.equals("huffman") && !backEnd.equals("arithmetic"))
+            throw new Exception("Unknown entropy coder: " + backEnd);
+
+        this.chainDepth = LEVELS[level][0];
+        this.lazy = LEVELS[level][1] == 1;
+        this.niceLength = LEVELS[level][2];
+        this.windowSize = windowSize;
+        this.backEnd = backEnd;
+    }
+
+    public LZSS(String backEnd) throws Exception {
+        this(DEFAULT_LEVEL, DEFAULT_WINDOW_SIZE, backEnd);
+    }
+
+    /**
+     * Numbers are grouped in slots of exponentially growing size.
+     * Slots 0 and 1 hold one number each. After that, every power of 2
+     * is split in two slots, whose members are told apart by the extra bits.
+     *
+     * @param value a non-negative number
+     * @return the slot of the number
+     */
+    private static int slotOf(int value) {
+        if (value < 2) return value;
+        int nb = Integer.SIZE - 1 - Integer.numberOfLeadingZeros(value);
+        return 2*nb + ((value >>> (nb-1)) & 1);
+    }
+
+    private static int extraBitsOf(int slot) {
+        return slot < 2 ? 0 : slot/2 - 1;
+    }
+
+    private static int baseOf(int slot) {
+        if (slot < 2) return slot;
+        return (2 | (slot & 1)) << (slot/2 - 1);
+    }
+
+    /**
+     * Picks characters which do not occur in the text to represent the slots.
+     *
+     * @param text the text to be encoded
+     * @throws Exception if the text uses (almost) every character
+     */
+    private void reserveSlotSymbols(String text) throws Exception {
+        this.literals = new BitSet(Character.MAX_VALUE + 1);
+        for (int i = 0; i < text.length(); i++)
+            this.literals.set(text.charAt(i));
+
+        this.lengthSymbols = new char[slotOf(MatchFinder.MAX_MATCH - MatchFinder.MIN_MATCH) + 1];
+        this.distanceSymbols = new char[slotOf(this.windowSize - 1) + 1];
+        this.slotOfSymbol = new HashMap<>();
+
+        int unused = this.literals.nextClearBit(0);
+        for (int slot = 0; slot < this.lengthSymbols.length; slot++) {
+            if (unused > Character.MAX_VALUE) throw new Exception("Too many distinct characters for LZSS!");
+            this.lengthSymbols[slot] = (char) unused;
+            this.slotOfSymbol.put((char) unused, slot);
+            unused = this.literals.nextClearBit(unused + 1);
+        }
+        for (int slot = 0; slot < this.distanceSymbols.length; slot++) {
+            if (unused > Character.MAX_VALUE) throw new Exception("Too many distinct characters for LZSS!");
+            this.distanceSymbols[slot] = (char) unused;
+            this.slotOfSymbol.put((char) unused, -(slot+1));
+            unused = this.literals.nextClearBit(unused + 1);
+        }
+    }
+
+    private void appendMatch(StringBuilder tokens, StringBuilder extra, int length, int distance) {
+        int value = length - MatchFinder.MIN_MATCH;
+        int slot = slotOf(value);
+        tokens.append(this.lengthSymbols[slot]);
+        TokenCoder.appendBits(extra, value - baseOf(slot), extraBitsOf(slot));
+
+        value = distance - 1;
+        slot = slotOf(value);
+        tokens.append(this.distanceSymbols[slot]);
+        TokenCoder.appendBits(extra, value - baseOf(slot), extraBitsOf(slot));
+    }
+
+    /**
+     * Parses the text into literals and matches.
+     * With lazy matching, a match is postponed by one literal
+     * when the next position has a longer match.
+     *
+     * @param text the text to parse
+     * @param tokens where the literals and slot symbols are written
+     * @param extra where the extra bits of the slots are written
+     */
+    private void parse(String text, StringBuilder tokens, StringBuilder extra) {
+        MatchFinder finder = new MatchFinder(text, this.windowSize, this.chainDepth, this.niceLength);
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            int length = finder.find(i);
+            int distance = finder.getDistance();
+            finder.insert(i);
+
+            if (this.lazy && length != 0 && length < this.niceLength && i+1 < n
+                    && finder.find(i+1) > length) {
+                tokens.append(text.charAt(i));
+                i++;
+                continue;
+            }
+
+            if (length == 0) {
+                tokens.append(text.charAt(i));
+                i++;
+                continue;
+            }
+
+            this.appendMatch(tokens, extra, length, distance);
+            for (int j = i+1; j < i+length; j++) finder.insert(j);
+            i += length;
+        }
+    }
+
+    @Override
+    public String getCoding(char symbol) {
+        if (this.tokenCoder == null || !this.literals.get(symbol)) return "";
+        return this.tokenCoder.getCoding(symbol);
+    }
+
+    @Override
+    public String encode(String text) {
+        StringBuilder tokens = new StringBuilder();
+        StringBuilder extra = new StringBuilder();
+        try {
+            this.reserveSlotSymbols(text);
+            this.parse(text, tokens, extra);
+            this.tokenCoder = new TokenCoder(tokens.toString(), this.backEnd, "lzss");
+        }
+        catch (Exception ex) {
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+
+        String coded = this.tokenCoder.encode(tokens.toString());
+        StringBuilder output = new StringBuilder(LENGTH_FIELD + coded.length() + extra.length());
+        TokenCoder.appendBits(output, coded.length(), LENGTH_FIELD);
+        return output.append(coded).append(extra).toString();
+    }
+
+    @Override
+    public String decode(String coded) {
+        int codedLength = (int) TokenCoder.readBits(coded, 0, LENGTH_FIELD);
+        int nextExtraBit = LENGTH_FIELD + codedLength;
+        String tokens = this.tokenCoder.decode(coded.substring(LENGTH_FIELD, nextExtraBit));
+
+        StringBuilder text = new StringBuilder();
+        int l = tokens.length();
+        for (int i = 0; i < l; i++) {
+            char token = tokens.charAt(i);
+            Integer lengthSlot = this.slotOfSymbol.get(token);
+            if (lengthSlot == null) {
+                text.append(token);
+                continue;
+            }
+
+            int bits = extraBitsOf(lengthSlot);
+            int length = baseOf(lengthSlot) + MatchFinder.MIN_MATCH
+                    + (int) TokenCoder.readBits(coded, nextExtraBit, bits);
+            nextExtraBit += bits;
+
+            int distanceSlot = -this.slotOfSymbol.get(tokens.charAt(++i)) - 1;
+            bits = extraBitsOf(distanceSlot);
+            int distance = baseOf(distanceSlot) + 1
+                    + (int) TokenCoder.readBits(coded, nextExtraBit, bits);
+            nextExtraBit += bits;
+
+            // Copy one by one, as the match may overlap with itself.
+            int from = text.length() - distance;
+            for (int j = 0; j < length; j++) text.append(text.charAt(from + j));
+        }
+
+        return text.toString();
+    }
+
+}
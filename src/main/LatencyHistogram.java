@@ -0,0 +1,107 @@
+package main;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts latencies in buckets whose width grows with the value, like HdrHistogram does:
+ * every power of two is split into {@link LatencyHistogram#SUB_BUCKETS} equal buckets,
+ * so any percentile is known within 1/{@link LatencyHistogram#SUB_BUCKETS} of its value,
+ * from nanoseconds to centuries, in a few kilobytes.
+ * Every bucket is a {@link LongAdder}, so threads recording at the same time do not contend.
+ *
+ * @see CoderMetrics
+ * @version 1.0
+ * @author 150009974
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) this.counts[i] = new LongAdder();
+    }
+
+    /**
+     * Values below {@link LatencyHistogram#SUB_BUCKETS} have a bucket each.
+     * Above, the bucket is given by the position of the leading one and the SUB_BUCKET_BITS after it.
+     */
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the smallest value counted in the bucket
+     */
+    private static long lowestOf(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * @param value a latency, negative values count as 0
+     */
+    void record(long value) {
+        if (value < 0) value = 0;
+        this.counts[indexOf(value)].increment();
+        this.total.add(value);
+        this.max.accumulate(value);
+    }
+
+    long getCount() {
+        long count = 0;
+        for (LongAdder bucket : this.counts) count += bucket.sum();
+        return count;
+    }
+
+    /**
+     * @return the sum of the values recorded
+     */
+    long getTotal() {
+        return this.total.sum();
+    }
+
+    long getMax() {
+        return this.max.get();
+    }
+
+    double getMean() {
+        long count = this.getCount();
+        return count == 0 ? 0.0 : 1.0 * this.getTotal() / count;
+    }
+
+    /**
+     * @param p the fraction of values at or below the percentile, from 0 to 1
+     * @return the highest value of the bucket holding the percentile, at most the largest value recorded
+     */
+    long getPercentile(double p) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) count += snapshot[i] = this.counts[i].sum();
+        if (count == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(p * count));
+        for (int i = 0; i < BUCKETS; i++) {
+            rank -= snapshot[i];
+            if (rank <= 0) return Math.min(this.getMax(), i + 1 < BUCKETS ? lowestOf(i + 1) - 1 : Long.MAX_VALUE);
+        }
+        return this.getMax();
+    }
+
+    void reset() {
+        for (LongAdder bucket : this.counts) bucket.reset();
+        this.total.reset();
+        this.max.reset();
+    }
+
+}
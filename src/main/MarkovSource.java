@@ -0,0 +1,284 @@
+package main;
+
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * An order-k Markov source: the probability of every symbol depends on the k symbols before it.
+ * The transition counts are estimated from a corpus and stored in sorted primitive arrays,
+ * one row per context which occurs in the corpus (like a compressed sparse row matrix):
+ * the contexts are sorted keys, and the symbols and cumulative counts of a row are consecutive.
+ * Every transition also stores the row of the context it leads to,
+ * so generating a symbol is a binary search within a single row.
+ * The entropy rate is the average information per symbol given its context,
+ * which is lower than the entropy of a memoryless {@link InformationSource} with the same frequencies
+ * whenever the symbols depend on each other.
+ *
+ * @see MarkovSource#estimate(CharSequence, int)
+ * @see MarkovSource#entropyRate(long)
+ * @version 1.0
+ * @author 150009974
+ */
+public class MarkovSource {
+
+    private final int order;
+    /**
+     * The distinct symbols of the corpus. Contexts and transitions use indices in this array.
+     */
+    private final char[] alphabet;
+    private final int bitsPerSymbol;
+    /**
+     * The k symbol indices of every context packed in a key, in increasing order.
+     */
+    private final long[] contexts;
+    /**
+     * The transitions of context r are from rowStart[r] to rowStart[r+1].
+     */
+    private final int[] rowStart;
+    private final char[] symbols;
+    /**
+     * The counts of the transitions of a row up to and including each transition.
+     */
+    private final int[] cumulative;
+    /**
+     * The row of the context after each transition, or -1 if that context never continues in the corpus.
+     */
+    private final int[] nextRow;
+    /**
+     * The number of transitions from the contexts up to and including each context.
+     */
+    private final long[] contextCumulative;
+
+    private MarkovSource(int order, char[] alphabet, int bitsPerSymbol, long[] transitions, int[] counts) {
+        this.order = order;
+        this.alphabet = alphabet;
+        this.bitsPerSymbol = bitsPerSymbol;
+        long symbolMask = (1L << bitsPerSymbol) - 1;
+
+        int rows = 0;
+        for (int t = 0; t < transitions.length; t++)
+            if (t == 0 || transitions[t] >>> bitsPerSymbol != transitions[t-1] >>> bitsPerSymbol) rows++;
+
+        this.contexts = new long[rows];
+        this.rowStart = new int[rows + 1];
+        this.symbols = new char[transitions.length];
+        this.cumulative = new int[transitions.length];
+        this.nextRow = new int[transitions.length];
+        this.contextCumulative = new long[rows];
+
+        long total = 0;
+        for (int t = 0, r = -1; t < transitions.length; t++) {
+            long context = transitions[t] >>> bitsPerSymbol;
+            boolean newRow = t == 0 || context != this.contexts[r];
+            if (newRow) {
+                this.contexts[++r] = context;
+                this.rowStart[r] = t;
+            }
+            this.symbols[t] = (char) (transitions[t] & symbolMask);
+            this.cumulative[t] = (newRow ? 0 : this.cumulative[t-1]) + counts[t];
+            total += counts[t];
+            this.contextCumulative[r] = total;
+        }
+        this.rowStart[rows] = transitions.length;
+
+        long contextMask = order == 0 ? 0 : (-1L >>> (Long.SIZE - order * bitsPerSymbol));
+        for (int t = 0; t < transitions.length; t++) {
+            // The context followed by the symbol, without its oldest symbol.
+            int row = Arrays.binarySearch(this.contexts, transitions[t] & contextMask);
+            this.nextRow[t] = row >= 0 ? row : -1;
+        }
+    }
+
+    /**
+     * Counts the transitions of a corpus.
+     *
+     * @param text the corpus
+     * @param order the number of symbols in a context, at least 0
+     * @return the Markov source with the frequencies of the corpus
+     * @throws Exception if the corpus is not longer than the order, or the contexts do not fit in 63 bits
+     */
+    public static MarkovSource estimate(CharSequence text, int order) throws Exception {
+        if (order < 0) throw new Exception("The order can not be negative!");
+        if (text.length() <= order) throw new Exception("The text must be longer than the order!");
+
+        int[] indexOf = new int[Character.MAX_VALUE + 1];
+        for (int i = 0; i < text.length(); i++) indexOf[text.charAt(i)] = 1;
+        int size = 0;
+        for (int c = 0; c < indexOf.length; c++) if (indexOf[c] != 0) size++;
+        char[] alphabet = new char[size];
+        for (int c = 0, i = 0; c < indexOf.length; c++)
+            if (indexOf[c] != 0) {
+                alphabet[i] = (char) c;
+                indexOf[c] = i++;
+            }
+
+        int bits = Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(size - 1));
+        if ((order + 1) * bits >= Long.SIZE)
+            throw new Exception("An order of " + order + " is too high for an alphabet of " + size + " symbols!");
+
+        TransitionCounts counted = new TransitionCounts();
+        long contextMask = order == 0 ? 0 : (-1L >>> (Long.SIZE - order * bits));
+        long context = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int symbol = indexOf[text.charAt(i)];
+            if (i >= order) counted.add((context << bits) | symbol);
+            context = ((context << bits) | symbol) & contextMask;
+        }
+
+        long[] transitions = counted.keys();
+        Arrays.sort(transitions);
+        int[] counts = new int[transitions.length];
+        for (int t = 0; t < transitions.length; t++) counts[t] = counted.get(transitions[t]);
+        return new MarkovSource(order, alphabet, bits, transitions, counts);
+    }
+
+    /**
+     * Counts distinct long keys in an open-addressing hash table with linear probing.
+     */
+    private static final class TransitionCounts {
+
+        /**
+         * Holds key+1 for every used slot and 0 for empty ones.
+         */
+        private long[] keys = new long[1 << 10];
+        private int[] counts = new int[1 << 10];
+        private int size = 0;
+
+        private int slotOf(long key) {
+            int mask = this.keys.length - 1;
+            long h = key * 0x9E3779B97F4A7C15L;
+            int slot = (int) (h ^ (h >>> 32)) & mask;
+            while (this.keys[slot] != 0 && this.keys[slot] != key + 1) slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        void add(long key) {
+            int slot = this.slotOf(key);
+            if (this.keys[slot] == 0) {
+                if ((this.size + 1) * 2 > this.keys.length) {
+                    long[] oldKeys = this.keys;
+                    int[] oldCounts = this.counts;
+                    this.keys = new long[oldKeys.length << 1];
+                    this.counts = new int[oldKeys.length << 1];
+                    for (int s = 0; s < oldKeys.length; s++) {
+                        if (oldKeys[s] == 0) continue;
+                        int moved = this.slotOf(oldKeys[s] - 1);
+                        this.keys[moved] = oldKeys[s];
+                        this.counts[moved] = oldCounts[s];
+                    }
+                    slot = this.slotOf(key);
+                }
+                this.keys[slot] = key + 1;
+                this.size++;
+            }
+            this.counts[slot]++;
+        }
+
+        int get(long key) {
+            return this.counts[this.slotOf(key)];
+        }
+
+        long[] keys() {
+            long[] distinct = new long[this.size];
+            int i = 0;
+            for (long key : this.keys) if (key != 0) distinct[i++] = key - 1;
+            return distinct;
+        }
+
+    }
+
+    public int getOrder() {
+        return this.order;
+    }
+
+    public int getContextCount() {
+        return this.contexts.length;
+    }
+
+    public int getTransitionCount() {
+        return this.symbols.length;
+    }
+
+    /**
+     * The conditional entropy of a symbol given its context,
+     * with the contexts weighted by how often they occur in the corpus.
+     *
+     * @param base the base of the logarithm
+     * @return the entropy rate in digits of the base per symbol
+     */
+    public double entropyRate(long base) {
+        double h = 0.0;
+        for (int r = 0; r < this.contexts.length; r++) {
+            double rowTotal = this.cumulative[this.rowStart[r+1] - 1];
+            for (int t = this.rowStart[r]; t < this.rowStart[r+1]; t++) {
+                double count = this.cumulative[t] - (t == this.rowStart[r] ? 0 : this.cumulative[t-1]);
+                h += count * Math.log(rowTotal / count);
+            }
+        }
+        h /= this.contextCumulative[this.contexts.length - 1];
+        return h / Math.log(base);
+    }
+
+    /**
+     * @return a context drawn with the frequency it has in the corpus
+     */
+    private int drawRow(SplittableRandom random) {
+        long roll = random.nextLong(this.contextCumulative[this.contexts.length - 1]);
+        int row = Arrays.binarySearch(this.contextCumulative, roll);
+        return row >= 0 ? row + 1 : -row - 1;
+    }
+
+    /**
+     * Generates the symbols of a chunk. The chunk starts with the symbols of a context
+     * drawn with its frequency in the corpus, and whenever the chain reaches a context
+     * which never continues in the corpus, it carries on from another drawn context.
+     */
+    private void fill(char[] buffer, int from, int to, SplittableRandom random) {
+        int symbolMask = (1 << this.bitsPerSymbol) - 1;
+        int row = this.drawRow(random);
+        int i = from;
+        for (int k = this.order - 1; k >= 0 && i < to; k--)
+            buffer[i++] = this.alphabet[(int) (this.contexts[row] >>> (k * this.bitsPerSymbol)) & symbolMask];
+
+        while (i < to) {
+            int start = this.rowStart[row];
+            int end = this.rowStart[row + 1];
+            int roll = random.nextInt(this.cumulative[end - 1]);
+            // The first transition whose cumulative count is above the roll.
+            int low = start, high = end - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (this.cumulative[middle] > roll) high = middle;
+                else low = middle + 1;
+            }
+            buffer[i++] = this.alphabet[this.symbols[low]];
+            row = this.nextRow[low] >= 0 ? this.nextRow[low] : this.drawRow(random);
+        }
+    }
+
+    /**
+     * Generates a text in parallel chunks, each one starting from a context drawn from the corpus.
+     *
+     * @param len the length of the text
+     * @param seed the seed of the random generator; the same seed gives the same text
+     * @return the generated text
+     */
+    public String generateText(int len, long seed) {
+        return new String(ChunkedGenerator.generate(this::fill, len, seed));
+    }
+
+    /**
+     * Streams the same text as {@link MarkovSource#generateText(int, long)}, which can be longer than fits in memory.
+     *
+     * @param len the length of the text
+     * @param seed the seed of the random generator
+     * @param out where to write the text
+     * @throws Exception if writing fails
+     */
+    public void writeText(long len, long seed, Writer out) throws Exception {
+        ChunkedGenerator.write(this::fill, len, seed, out);
+        out.flush();
+    }
+
+}
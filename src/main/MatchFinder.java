@@ -0,0 +1,111 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * Finds the longest earlier occurrence of the text at a position, for {@link LZSS}.
+ * Positions are chained by the hash of their first {@link MatchFinder#MIN_MATCH} symbols.
+ * {@link MatchFinder#head} holds the latest position for each hash and
+ * {@link MatchFinder#prev} links every position in the window to the previous one with the same hash.
+ * Only the most recent chainDepth candidates are compared,
+ * which trades compression ratio for speed.
+ *
+ * @see LZSS
+ * @version 1.0
+ * @author 150009974
+ */
+final class MatchFinder {
+
+    static final int MIN_MATCH = 3;
+    static final int MAX_MATCH = 258;
+    private static final int HASH_BITS = 16;
+    private static final int NIL = -1;
+
+    private final String text;
+    private final int windowMask;
+    private final int chainDepth;
+    private final int niceLength;
+
+    private final int[] head = new int[1 << HASH_BITS];
+    private final int[] prev;
+    private int distance;
+
+    /**
+     * @param text the whole text being compressed
+     * @param windowSize how far back matches can start, a power of 2
+     * @param chainDepth the maximum number of candidates compared per position
+     * @param niceLength a match this long is accepted without looking further
+     */
+    MatchFinder(String text, int windowSize, int chainDepth, int niceLength) {
+        this.text = text;
+        this.windowMask = windowSize - 1;
+        this.chainDepth = chainDepth;
+        this.niceLength = niceLength;
+        this.prev = new int[windowSize];
+        Arrays.fill(this.head, NIL);
+    }
+
+    private int hash(int position) {
+        int h = (this.text.charAt(position) << 10)
+                ^ (this.text.charAt(position+1) << 5)
+                ^ this.text.charAt(position+2);
+        return (h * 0x9E3779B1) >>> (Integer.SIZE - HASH_BITS);
+    }
+
+    /**
+     * Makes the position a candidate for later matches.
+     * Positions must be inserted in increasing order.
+     *
+     * @param position the position in the text
+     */
+    void insert(int position) {
+        if (position + MIN_MATCH > this.text.length()) return;
+        int h = this.hash(position);
+        this.prev[position & this.windowMask] = this.head[h];
+        this.head[h] = position;
+    }
+
+    /**
+     * Searches the inserted positions for the longest match of the text at the given position.
+     * The position itself should not be inserted yet.
+     *
+     * @param position the position in the text
+     * @return the length of the longest match, or 0 if it is shorter than {@link MatchFinder#MIN_MATCH}
+     * @see MatchFinder#getDistance()
+     */
+    int find(int position) {
+        int available = Math.min(MAX_MATCH, this.text.length() - position);
+        if (available < MIN_MATCH || this.chainDepth == 0) return 0;
+
+        int best = MIN_MATCH - 1;
+        int candidate = this.head[this.hash(position)];
+        for (int chain = this.chainDepth; chain > 0 && candidate != NIL; chain--) {
+            if (position - candidate > this.windowMask) break;  // Out of the window.
+
+            int length = 0;
+            while (length < available
+                    && this.text.charAt(candidate + length) == this.text.charAt(position + length))
+                length++;
+
+            if (length > best) {
+                best = length;
+                this.distance = position - candidate;
+                if (length >= this.niceLength) break;
+            }
+
+            int older = this.prev[candidate & this.windowMask];
+            if (older >= candidate) break;  // The link was overwritten by a newer position.
+            candidate = older;
+        }
+
+        return best >= MIN_MATCH ? best : 0;
+    }
+
+    /**
+     * @return how far back the match found by the last {@link MatchFinder#find(int)} starts
+     */
+    int getDistance() {
+        return this.distance;
+    }
+
+}
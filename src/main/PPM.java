@@ -0,0 +1,241 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * Prediction by Partial Matching.
+ * Codes each symbol with an {@link ArithmeticCoder}, using the statistics of
+ * the symbols that followed the same k preceding symbols (the context) so far.
+ * When a symbol has not been seen in a context, an escape is coded and
+ * the next shorter context is tried, down to order 0 and finally a uniform order -1.
+ * Symbols which were already rejected in a longer context are excluded from the shorter ones.
+ * Escape frequencies are the number of distinct symbols in the context (method C).
+ * Unlike {@link Arithmetic} and {@link Huffman}, no {@link InformationSource} is needed,
+ * as the model adapts to the text while coding it.
+ *
+ * @see ArithmeticCoder
+ * @see ContextTable
+ * @see CompressionTechnique
+ * @version 1.0
+ * @author 150009974
+ */
+public class PPM extends CompressionTechnique {
+
+    /**
+     * Three 16 bit symbols and the order fit in a 64 bit context key.
+     */
+    public static final int MAX_ORDER = 3;
+    public static final int DEFAULT_RECORD_LIMIT = 1 << 22;
+    /**
+     * Counts in a context are halved when their sum exceeds this.
+     * Keeps the model adaptive and the totals within {@link ArithmeticCoder#MAX_TOTAL}.
+     */
+    private static final int MAX_CONTEXT_TOTAL = 1 << 16;
+    /**
+     * The symbol coded after the last character of the text.
+     * It only exists in order -1, next to all the 2^16 characters.
+     */
+    private static final int END = Character.MAX_VALUE + 1;
+    private static final int ORDER_MINUS_ONE_TOTAL = END + 1;
+
+    private final int order;
+    private final int recordLimit;
+
+    /**
+     * The state of a single encoding or decoding.
+     * Keeps the model separate from the {@link PPM} instance,
+     * so the same instance can be used to code many texts.
+     */
+    private class Session {
+
+        private final ContextTable table = new ContextTable(recordLimit);
+        private final ArithmeticCoder coder;
+        private final int[] excluded = new int[END];
+        private int stamp = 0;
+        private long history = 0;
+        private int available = 0;
+
+        Session(ArithmeticCoder coder) {
+            this.coder = coder;
+        }
+
+        private long key(int o) {
+            long mask = (1L << (Character.SIZE * o)) - 1;
+            return ((long) o << (Character.SIZE * MAX_ORDER)) | (this.history & mask);
+        }
+
+        private boolean isExcluded(char symbol) {
+            return this.excluded[symbol] == this.stamp;
+        }
+
+        private void excludeAll(int slot) {
+            for (int r = this.table.head(slot); r != ContextTable.NONE; r = this.table.next(r))
+                this.excluded[this.table.symbol(r)] = this.stamp;
+        }
+
+        private void nextSymbol() {
+            if (this.stamp == Integer.MAX_VALUE) {
+                Arrays.fill(this.excluded, 0);
+                this.stamp = 0;
+            }
+            this.stamp++;
+        }
+
+        /**
+         * Sums the counts of the symbols in the context, which are not excluded.
+         *
+         * @param slot the slot of the context in the {@link ContextTable}
+         * @return the sum of the counts in the lower 32 bits
+         *         and the number of distinct symbols (the escape count) in the upper 32 bits
+         */
+        private long sumCounts(int slot) {
+            int sum = 0;
+            int escape = 0;
+            for (int r = this.table.head(slot); r != ContextTable.NONE; r = this.table.next(r)) {
+                if (this.isExcluded(this.table.symbol(r))) continue;
+                sum += this.table.count(r);
+                escape++;
+            }
+            return ((long) escape << Integer.SIZE) | sum;
+        }
+
+        void encode(int symbol) {
+            this.nextSymbol();
+            for (int o = this.available; o >= 0; o--) {
+                int slot = this.table.find(this.key(o));
+                if (slot == ContextTable.NONE) continue;
+
+                long sums = this.sumCounts(slot);
+                int sum = (int) sums;
+                int escape = (int) (sums >>> Integer.SIZE);
+                if (escape == 0) continue;  // Everything here was excluded.
+
+                int low = 0;
+                for (int r = this.table.head(slot); r != ContextTable.NONE; r = this.table.next(r)) {
+                    char s = this.table.symbol(r);
+                    if (this.isExcluded(s)) continue;
+                    if (s == symbol) {
+                        this.coder.encode(low, low + this.table.count(r), sum + escape);
+                        return;
+                    }
+                    low += this.table.count(r);
+                }
+
+                this.coder.encode(sum, sum + escape, sum + escape);
+                this.excludeAll(slot);
+            }
+            this.coder.encode(symbol, symbol + 1, ORDER_MINUS_ONE_TOTAL);
+        }
+
+        int decode() {
+            this.nextSymbol();
+            for (int o = this.available; o >= 0; o--) {
+                int slot = this.table.find(this.key(o));
+                if (slot == ContextTable.NONE) continue;
+
+                long sums = this.sumCounts(slot);
+                int sum = (int) sums;
+                int escape = (int) (sums >>> Integer.SIZE);
+                if (escape == 0) continue;
+
+                int target = this.coder.getTarget(sum + escape);
+                if (target < sum) {
+                    int low = 0;
+                    for (int r = this.table.head(slot); r != ContextTable.NONE; r = this.table.next(r)) {
+                        char s = this.table.symbol(r);
+                        if (this.isExcluded(s)) continue;
+                        int high = low + this.table.count(r);
+                        if (target < high) {
+                            this.coder.decode(low, high, sum + escape);
+                            return s;
+                        }
+                        low = high;
+                    }
+                }
+
+                this.coder.decode(sum, sum + escape, sum + escape);
+                this.excludeAll(slot);
+            }
+            int symbol = this.coder.getTarget(ORDER_MINUS_ONE_TOTAL);
+            this.coder.decode(symbol, symbol + 1, ORDER_MINUS_ONE_TOTAL);
+            return symbol;
+        }
+
+        /**
+         * Counts the symbol in every context that precedes it and makes it part of the history.
+         * Both the encoder and the decoder reset the model at the same point once it is full.
+         *
+         * @param symbol the symbol that was just coded
+         */
+        void update(char symbol) {
+            for (int o = 0; o <= this.available; o++)
+                this.table.update(this.key(o), symbol, MAX_CONTEXT_TOTAL);
+            if (this.table.isFull()) this.table.reset();
+
+            this.history = (this.history << Character.SIZE) | symbol;
+            if (this.available < order) this.available++;
+        }
+
+    }
+
+    /**
+     * @param order the length of the longest context, between 0 and {@link PPM#MAX_ORDER}
+     * @param recordLimit the maximum number of (context, symbol) pairs kept in memory,
+     *                    after which the model is reset
+     * @throws Exception if the order or the limit are out of range
+     */
+    public PPM(int order, int recordLimit) throws Exception {
+        if (order < 0 || order > MAX_ORDER)
+            throw new Exception("PPM order must be between 0 and " + MAX_ORDER + "!");
+        if (recordLimit <= order)
+            throw new Exception("PPM needs room for at least " + (order+1) + " records!");
+        this.order = order;
+        this.recordLimit = recordLimit;
+    }
+
+    public PPM(int order) throws Exception {
+        this(order, DEFAULT_RECORD_LIMIT);
+    }
+
+    /**
+     * The codes depend on the context, so there is no single coding per symbol.
+     *
+     * @param symbol the symbol
+     * @return a description of the model
+     */
+    @Override
+    public String getCoding(char symbol) {
+        return "order-" + this.order + " context";
+    }
+
+    @Override
+    public String encode(String text) {
+        StringBuilder tag = new StringBuilder();
+        Session session = new Session(ArithmeticCoder.encoder(tag));
+
+        int l = text.length();
+        for (int i = 0; i < l; i++) {
+            char c = text.charAt(i);
+            session.encode(c);
+            session.update(c);
+        }
+        session.encode(END);
+        session.coder.finish();
+
+        return tag.toString();
+    }
+
+    @Override
+    public String decode(String coded) {
+        StringBuilder text = new StringBuilder();
+        Session session = new Session(ArithmeticCoder.decoder(coded, 0));
+
+        for (int symbol = session.decode(); symbol != END; symbol = session.decode()) {
+            text.append((char) symbol);
+            session.update((char) symbol);
+        }
+
+        return text.toString();
+    }
+
+}
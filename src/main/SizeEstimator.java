@@ -0,0 +1,268 @@
+package main;
+
+import java.util.LinkedList;
+
+/**
+ * Predicts the length of the coded text from the symbol counts alone, without encoding.
+ * The model is the one the coders would be given: {@link InformationSource#estimateFromText(String)}
+ * for a text, with the same End Of Data symbol.
+ * The {@link Huffman} length is exact, as it only depends on the code lengths,
+ * which are computed with {@link CodeLengths} in place of building a tree.
+ * The {@link Arithmetic} length is bounded by the information content of the text
+ * under the probabilities {@link Arithmetic} actually uses (after making room for its EOD),
+ * plus the bits its 63 bit intervals can lose to rounding, plus the bits written when the encoding finishes.
+ * Both include the cost of a header describing the model,
+ * as a table of (symbol, code length) or (symbol, count) pairs.
+ * This makes it possible to pick a technique for a text in time proportional to the alphabet,
+ * once the symbols are counted.
+ *
+ * @see Estimate
+ * @see SizeEstimator#estimate(String, int)
+ * @version 1.0
+ * @author 150009974
+ */
+public class SizeEstimator {
+
+    /**
+     * The bits needed to write the number of symbols in a table.
+     */
+    public static final int SYMBOL_COUNT_FIELD = Character.SIZE + 1;
+    /**
+     * The bits needed to write a code length in a {@link Huffman} table.
+     */
+    public static final int LENGTH_FIELD = 5;
+    /**
+     * The bits needed to write a quantised count in an {@link Arithmetic} table.
+     */
+    public static final int COUNT_FIELD = Character.SIZE;
+    /**
+     * {@link Arithmetic} ends the tag with the remaining bits of the interval's lower bound.
+     * One more bit is lost to rounding the information content up.
+     */
+    private static final int ARITHMETIC_TAIL = Long.SIZE;
+    /**
+     * Coding a symbol of probability p leaves {@link Arithmetic} an interval at least p times its interval
+     * (of more than 2^61 values) minus this fraction of it, lost to truncating the bounds to integers
+     * and to the 53 bit precision of the doubles they are computed with.
+     */
+    private static final double ROUNDING_LOSS = 0x1p-48;
+
+    /**
+     * The predicted lengths of a text coded in each way, all in bits unless stated otherwise.
+     */
+    public static class Estimate {
+
+        private final long symbols;
+        private final int base;
+        private final long huffmanDigits;
+        private final long huffmanHeader;
+        private final long arithmeticBits;
+        private final long arithmeticHeader;
+
+        Estimate(long symbols, int base, long huffmanDigits, long huffmanHeader,
+                 long arithmeticBits, long arithmeticHeader) {
+            this.symbols = symbols;
+            this.base = base;
+            this.huffmanDigits = huffmanDigits;
+            this.huffmanHeader = huffmanHeader;
+            this.arithmeticBits = arithmeticBits;
+            this.arithmeticHeader = arithmeticHeader;
+        }
+
+        /**
+         * @return the exact length of the {@link Huffman} code in digits of the base,
+         *         the same as the length of the {@link String} returned by {@link Huffman#encode(String)}
+         */
+        public long getHuffmanDigits() {
+            return this.huffmanDigits;
+        }
+
+        /**
+         * @return the {@link Huffman} code converted to bits, plus its header
+         */
+        public long getHuffmanBits() {
+            double bitsPerDigit = Math.log(this.base) / Math.log(2);
+            return (long) Math.ceil(this.huffmanDigits * bitsPerDigit) + this.huffmanHeader;
+        }
+
+        /**
+         * @return an upper bound of the length of the {@link Arithmetic} code, plus its header,
+         *         or {@link Long#MAX_VALUE} if {@link Arithmetic} can not code the text (it has no EOD or no other symbol)
+         */
+        public long getArithmeticBits() {
+            if (this.arithmeticBits == Long.MAX_VALUE) return Long.MAX_VALUE;
+            return this.arithmeticBits + this.arithmeticHeader;
+        }
+
+        /**
+         * @return the length of the text stored without coding
+         */
+        public long getRawBits() {
+            return this.symbols * Character.SIZE;
+        }
+
+        /**
+         * @return "huffman", "arithmetic" or "raw", whichever is predicted to be the shortest
+         */
+        public String getBest() {
+            long huffman = this.getHuffmanBits();
+            long arithmetic = this.getArithmeticBits();
+            long raw = this.getRawBits();
+            if (raw <= huffman && raw <= arithmetic) return "raw";
+            return huffman <= arithmetic ? "huffman" : "arithmetic";
+        }
+
+        @Override
+        public String toString() {
+            return "Huffman = " + this.getHuffmanBits()
+                    + "\tArithmetic <= " + (this.getArithmeticBits() == Long.MAX_VALUE ? "n/a" : this.getArithmeticBits())
+                    + "\tRaw = " + this.getRawBits();
+        }
+
+    }
+
+    /**
+     * Counts the symbols of the text and estimates from the counts.
+     * The End Of Data symbol is chosen like {@link InformationSource#estimateFromText(String)} does:
+     * the last character of the text if it occurs only there, or else an unused character.
+     *
+     * @param text the text to be coded
+     * @param base the base of the {@link Huffman} code
+     * @return the estimated lengths
+     */
+    public static Estimate estimate(String text, int base) {
+        int[] counts = new int[Character.MAX_VALUE + 1];
+        for (int i = 0; i < text.length(); i++) counts[text.charAt(i)]++;
+
+        int eod = InformationSource.chooseEOD(text, counts);
+        long eodCount = eod < 0 ? 0 : counts[eod];
+        if (eod >= 0) counts[eod] = 0;
+        // An unused EOD counts in the length, like in the estimated source.
+        long length = text.length() + (eod >= 0 && eodCount == 0 ? 1 : 0);
+
+        int distinct = 0;
+        for (int count : counts) if (count != 0) distinct++;
+
+        long[] present = new long[distinct];
+        double[] probabilities = new double[distinct];
+        for (int c = 0, i = 0; i < distinct; c++)
+            if (counts[c] != 0) {
+                present[i] = counts[c];
+                probabilities[i++] = 1.0*counts[c]/length;
+            }
+
+        return estimate(probabilities, present, eod >= 0, eodCount, base);
+    }
+
+    /**
+     * Estimates the length of a text drawn from an {@link InformationSource},
+     * like {@link InformationSource#generateText(int, long)}: the symbols, followed by the EOD if there is one.
+     * The counts of the symbols are taken to be their expected values,
+     * so the {@link Arithmetic} length is not a bound for a particular text.
+     *
+     * @param source the entries of the {@link InformationSource}
+     * @param eod the End Of Data symbol, may be null
+     * @param length the length of the text
+     * @param base the base of the {@link Huffman} code
+     * @return the estimated lengths
+     */
+    public static Estimate estimate(LinkedList<InformationSourceEntry> source, InformationSourceEntry eod,
+                                    long length, int base) {
+        long[] counts = new long[source.size()];
+        double[] probabilities = new double[source.size()];
+        int i = 0;
+        for (InformationSourceEntry entry : source) {
+            probabilities[i] = entry.getProbability();
+            counts[i++] = Math.max(1, Math.round(entry.getProbability() * length));
+        }
+        return estimate(probabilities, counts, eod != null, eod != null ? 1 : 0, base);
+    }
+
+    /**
+     * Estimates from the counts of the distinct symbols of a text.
+     * Takes time proportional to the number of distinct symbols (and the sort of their counts).
+     *
+     * @param counts the number of occurrences of each distinct symbol, all positive
+     * @param withEOD whether the model contains an End Of Data symbol which does not occur
+     * @param base the base of the {@link Huffman} code
+     * @return the estimated lengths
+     */
+    public static Estimate estimate(long[] counts, boolean withEOD, int base) {
+        long total = 0;
+        for (long count : counts) total += count;
+        // An unused EOD counts in the length, like in the estimated source.
+        long length = total + (withEOD ? 1 : 0);
+        double[] probabilities = new double[counts.length];
+        for (int i = 0; i < counts.length; i++) probabilities[i] = 1.0*counts[i]/length;
+        return estimate(probabilities, counts, withEOD, 0, base);
+    }
+
+    /**
+     * Estimates from the model the coders are built with and the counts of the symbols coded.
+     *
+     * @param probabilities the probability of each distinct symbol other than the EOD, in the model
+     * @param counts the number of occurrences of each of them
+     * @param withEOD whether the model contains an End Of Data symbol
+     * @param eodCount the number of occurrences of the EOD
+     * @param base the base of the {@link Huffman} code
+     * @return the estimated lengths
+     */
+    private static Estimate estimate(double[] probabilities, long[] counts, boolean withEOD, long eodCount,
+                                     int base) {
+        int distinct = counts.length;
+        long total = eodCount;
+        for (long count : counts) total += count;
+
+        // Huffman: the EOD weighs Double.MIN_VALUE, as set by InformationSource#setEOD.
+        double[] weights = new double[distinct + (withEOD ? 1 : 0)];
+        System.arraycopy(probabilities, 0, weights, 0, distinct);
+        if (withEOD) weights[distinct] = Double.MIN_VALUE;
+
+        long digits = 0;
+        if (weights.length > 0) {
+            int[] lengths = CodeLengths.optimal(weights, base);
+            for (int i = 0; i < distinct; i++) digits += counts[i] * lengths[i];
+            if (withEOD) digits += eodCount * lengths[distinct];
+        }
+        long tableSize = weights.length;
+        long huffmanHeader = SYMBOL_COUNT_FIELD + tableSize * (Character.SIZE + LENGTH_FIELD);
+
+        long arithmeticBits = withEOD && distinct > 0 ?
+                arithmeticBound(probabilities, counts, eodCount) : Long.MAX_VALUE;
+        long arithmeticHeader = SYMBOL_COUNT_FIELD + tableSize * (Character.SIZE + COUNT_FIELD);
+
+        return new Estimate(total, base, digits, huffmanHeader, arithmeticBits, arithmeticHeader);
+    }
+
+    /**
+     * The probabilities are changed like the {@link Arithmetic} constructor does:
+     * the EOD is given the smallest probability / (N+1), which is then taken out of all N+1 symbols,
+     * and the EOD gets what is left to make the sum 1.
+     *
+     * @return the most bits {@link Arithmetic#encode(String)} can write for the symbols
+     */
+    private static long arithmeticBound(double[] probabilities, long[] counts, long eodCount) {
+        int n = probabilities.length;
+        double smallest = Double.MAX_VALUE, sum = 0.0;
+        for (double p : probabilities) smallest = Math.min(smallest, p);
+        double eod = smallest/(n + 1);
+        double delta = eod/(n + 1);
+        for (double p : probabilities) sum += p - delta;
+        eod = eod - delta + 1.0 - (sum + eod - delta);
+
+        double information = 0.0;
+        for (int i = 0; i < n; i++) information += counts[i] * information(probabilities[i] - delta);
+        information += eodCount * information(eod);
+        // Probabilities this small are lost in the rounding.
+        if (Double.isNaN(information) || Double.isInfinite(information)) return Long.MAX_VALUE;
+        return (long) Math.ceil(information) + ARITHMETIC_TAIL;
+    }
+
+    /**
+     * @return the bits needed for a symbol of probability p, with the rounding of the interval
+     */
+    private static double information(double p) {
+        return -Math.log(p - ROUNDING_LOSS) / Math.log(2);
+    }
+
+}
@@ -0,0 +1,138 @@
+package main;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * A frozen copy of the entries of an {@link InformationSource}, which can be shared between threads.
+ * All the fields are final and the arrays never leave the class,
+ * so a snapshot never changes, whatever happens to the source it was taken from.
+ * Coders built from a snapshot only read it, and keep their per-call state in sessions,
+ * so one snapshot and its coders can serve any number of threads without locks.
+ * Two snapshots are equal when their symbols are the same and their probabilities,
+ * quantized to {@link SourceSnapshot#QUANTIZATION_BITS} bits, are the same,
+ * so models which only differ by rounding errors are the same model.
+ *
+ * @see InformationSource#snapshot()
+ * @see CoderCache
+ * @version 1.0
+ * @author 150009974
+ */
+public final class SourceSnapshot {
+
+    /**
+     * Probabilities are rounded to multiples of 2^-QUANTIZATION_BITS for comparing snapshots.
+     */
+    static final int QUANTIZATION_BITS = 32;
+
+    /**
+     * From most common to least common.
+     */
+    private final char[] symbols;
+    private final double[] probabilities;
+    private final boolean hasEOD;
+    private final char eodSymbol;
+    private final double eodProbability;
+    /**
+     * One long per symbol (EOD last), holding the symbol in the top 16 bits and the quantized probability below.
+     */
+    private final long[] fingerprint;
+    private final int hash;
+
+    /**
+     * @param sorted the entries, from most common to least common
+     * @param eod the EOD, or null
+     */
+    SourceSnapshot(InformationSourceEntry[] sorted, InformationSourceEntry eod) {
+        this.symbols = new char[sorted.length];
+        this.probabilities = new double[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            this.symbols[i] = sorted[i].getSymbol();
+            this.probabilities[i] = sorted[i].getProbability();
+        }
+        this.hasEOD = eod != null;
+        this.eodSymbol = eod != null ? eod.getSymbol() : 0;
+        this.eodProbability = eod != null ? eod.getProbability() : 0.0;
+
+        this.fingerprint = new long[sorted.length + (this.hasEOD ? 1 : 0)];
+        for (int i = 0; i < sorted.length; i++)
+            this.fingerprint[i] = quantize(this.symbols[i], this.probabilities[i]);
+        if (this.hasEOD) this.fingerprint[sorted.length] = quantize(this.eodSymbol, this.eodProbability);
+        this.hash = Arrays.hashCode(this.fingerprint);
+    }
+
+    private static long quantize(char symbol, double probability) {
+        long quantized = Math.round(Math.scalb(probability, QUANTIZATION_BITS));
+        return (long) symbol << (Long.SIZE - Character.SIZE) | quantized;
+    }
+
+    public int size() {
+        return this.symbols.length;
+    }
+
+    /**
+     * @param i the rank of the symbol, 0 for the most common
+     * @return the symbol
+     */
+    public char getSymbol(int i) {
+        return this.symbols[i];
+    }
+
+    /**
+     * @param i the rank of the symbol, 0 for the most common
+     * @return the probability of the symbol
+     */
+    public double getProbability(int i) {
+        return this.probabilities[i];
+    }
+
+    public boolean hasEOD() {
+        return this.hasEOD;
+    }
+
+    /**
+     * @return a new copy of the EOD entry, or null if there is no EOD
+     */
+    public InformationSourceEntry getEOD() {
+        if (!this.hasEOD) return null;
+        try {
+            return new InformationSourceEntry(this.eodSymbol, this.eodProbability);
+        }
+        catch (Exception ex) {
+            ex.printStackTrace();
+            System.err.println("Copied elements were supposed to be valid!");
+            return null;
+        }
+    }
+
+    /**
+     * @return new copies of the entries in a {@link LinkedList}, from most common to least common
+     * @see InformationSource#toLinkedList()
+     */
+    public LinkedList<InformationSourceEntry> toLinkedList() {
+        LinkedList<InformationSourceEntry> orderedList = new LinkedList<>();
+        for (int i = 0; i < this.symbols.length; i++) {
+            try {
+                orderedList.addLast(new InformationSourceEntry(this.symbols[i], this.probabilities[i]));
+            }
+            catch (Exception ex) {
+                ex.printStackTrace();
+                System.err.println("Copied elements were supposed to be valid!");
+            }
+        }
+        return orderedList;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof SourceSnapshot
+                && this.hash == ((SourceSnapshot) obj).hash
+                && Arrays.equals(this.fingerprint, ((SourceSnapshot) obj).fingerprint);
+    }
+
+}
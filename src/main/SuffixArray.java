@@ -0,0 +1,127 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * Builds suffix arrays in linear time with the SA-IS algorithm (Nong, Zhang and Chan).
+ * Suffixes are classified as S-type (smaller than the next suffix) or L-type (larger).
+ * The leftmost S-type suffixes (LMS) are sorted first, by induced sorting of the LMS substrings,
+ * recursing on a reduced string when two LMS substrings are equal.
+ * The order of all other suffixes is then induced from the LMS suffixes.
+ *
+ * @see BWT
+ * @version 1.0
+ * @author 150009974
+ */
+final class SuffixArray {
+
+    private SuffixArray() {}
+
+    /**
+     * @param s the string, with values in [0; alphabetSize) and
+     *          a unique smallest value (the sentinel) at the end
+     * @param alphabetSize one more than the largest value in s
+     * @return the starting positions of the suffixes of s, in lexicographic order
+     */
+    static int[] build(int[] s, int alphabetSize) {
+        int[] sa = new int[s.length];
+        if (s.length == 1) return sa;
+        sais(s, sa, s.length, alphabetSize);
+        return sa;
+    }
+
+    private static boolean isLMS(boolean[] sType, int i) {
+        return i > 0 && sType[i] && !sType[i-1];
+    }
+
+    private static void getBuckets(int[] s, int[] bucket, int n, boolean ends) {
+        Arrays.fill(bucket, 0);
+        for (int i = 0; i < n; i++) bucket[s[i]]++;
+        int sum = 0;
+        for (int c = 0; c < bucket.length; c++) {
+            sum += bucket[c];
+            bucket[c] = ends ? sum : sum - bucket[c];
+        }
+    }
+
+    private static void induceL(int[] s, int[] sa, boolean[] sType, int[] bucket, int n) {
+        getBuckets(s, bucket, n, false);
+        for (int i = 0; i < n; i++) {
+            int j = sa[i] - 1;
+            if (j >= 0 && !sType[j]) sa[bucket[s[j]]++] = j;
+        }
+    }
+
+    private static void induceS(int[] s, int[] sa, boolean[] sType, int[] bucket, int n) {
+        getBuckets(s, bucket, n, true);
+        for (int i = n-1; i >= 0; i--) {
+            int j = sa[i] - 1;
+            if (j >= 0 && sType[j]) sa[--bucket[s[j]]] = j;
+        }
+    }
+
+    private static void sais(int[] s, int[] sa, int n, int k) {
+        boolean[] sType = new boolean[n];
+        sType[n-1] = true;
+        for (int i = n-2; i >= 0; i--)
+            sType[i] = s[i] < s[i+1] || (s[i] == s[i+1] && sType[i+1]);
+
+        // Stage 1: sort the LMS substrings.
+        int[] bucket = new int[k];
+        getBuckets(s, bucket, n, true);
+        Arrays.fill(sa, -1);
+        for (int i = 1; i < n; i++)
+            if (isLMS(sType, i)) sa[--bucket[s[i]]] = i;
+        induceL(s, sa, sType, bucket, n);
+        induceS(s, sa, sType, bucket, n);
+
+        // Move the sorted LMS substrings to the front and name them.
+        int n1 = 0;
+        for (int i = 0; i < n; i++)
+            if (isLMS(sType, sa[i])) sa[n1++] = sa[i];
+        Arrays.fill(sa, n1, n, -1);
+
+        int name = 0;
+        int prev = -1;
+        for (int i = 0; i < n1; i++) {
+            int pos = sa[i];
+            boolean different = false;
+            for (int d = 0; ; d++) {
+                if (prev == -1 || s[pos+d] != s[prev+d] || sType[pos+d] != sType[prev+d]) {
+                    different = true;
+                    break;
+                }
+                if (d > 0 && (isLMS(sType, pos+d) || isLMS(sType, prev+d))) break;
+            }
+            if (different) {
+                name++;
+                prev = pos;
+            }
+            // No two LMS positions are adjacent, so pos/2 is unique.
+            sa[n1 + pos/2] = name - 1;
+        }
+        for (int i = n-1, j = n-1; i >= n1; i--)
+            if (sa[i] >= 0) sa[j--] = sa[i];
+
+        // Stage 2: sort the LMS suffixes, recursing if their names are not unique.
+        int[] s1 = Arrays.copyOfRange(sa, n - n1, n);
+        int[] sa1 = new int[n1];
+        if (name < n1) sais(s1, sa1, n1, name);
+        else for (int i = 0; i < n1; i++) sa1[s1[i]] = i;
+
+        // Stage 3: induce the order of all suffixes from the sorted LMS suffixes.
+        for (int i = 1, j = 0; i < n; i++)
+            if (isLMS(sType, i)) s1[j++] = i;
+        for (int i = 0; i < n1; i++) sa1[i] = s1[sa1[i]];
+
+        getBuckets(s, bucket, n, true);
+        Arrays.fill(sa, -1);
+        for (int i = n1-1; i >= 0; i--) {
+            int j = sa1[i];
+            sa[--bucket[s[j]]] = j;
+        }
+        induceL(s, sa, sType, bucket, n);
+        induceS(s, sa, sType, bucket, n);
+    }
+
+}
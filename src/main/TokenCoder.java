@@ -0,0 +1,159 @@
+package main;
+
+import java.util.LinkedList;
+
+/**
+ * Entropy codes the output of a transform stage (such as {@link LZSS}) with
+ * one of the existing techniques, {@link Huffman} or {@link Arithmetic}.
+ * The tokens of the transform are represented as characters of a {@link String},
+ * so that an {@link InformationSource} can be estimated from them
+ * exactly as the GUI does for plain text.
+ * Token streams with fewer than two distinct tokens (besides the EOD) are always coded with {@link Huffman},
+ * as {@link Arithmetic} can not be built over an empty model and does not decode a one-symbol model.
+ * The coding is counted in the {@link CoderMetrics} of the transform, like "lzss-huffman",
+ * not in those of the technique coding the tokens.
+ * Also contains helpers for writing fixed width numbers as '0' and '1' characters.
+ *
+ * @see LZSS
+ * @see InformationSource#estimateFromText(String)
+ * @version 1.2
+ * @author 150009974
+ */
+final class TokenCoder {
+
+    /**
+     * The fewest distinct tokens, besides the EOD, that {@link Arithmetic} can code.
+     * Fewer tokens are coded with {@link Huffman}, which gives them one digit each.
+     */
+    private static final int MIN_ARITHMETIC_TOKENS = 2;
+
+    private final CompressionTechnique technique;
+    private final char eod;
+    private final boolean eodIsToken;
+
+    /**
+     * Estimates an {@link InformationSource} from the tokens
+     * and builds the named technique over it.
+     *
+     * @param tokens the tokens that will be encoded
+     * @param techniqueName "huffman" or "arithmetic", as used by {@link ui.Handlers}
+     * @param owner the name of the transform, like "lzss"
+     * @throws Exception if the technique is unknown or can not be built
+     * @see TokenCoder#MIN_ARITHMETIC_TOKENS
+     */
+    TokenCoder(String tokens, String techniqueName, String owner) throws Exception {
+        InformationSource source = InformationSource.estimateFromText(tokens);
+        if (source.getEOD() == null)
+            throw new Exception("No character can be used as EOD for the tokens!");
+
+        this.eod = source.getEOD().getSymbol();
+        this.eodIsToken = tokens.length() != 0 && tokens.charAt(tokens.length()-1) == this.eod;
+
+        LinkedList<InformationSourceEntry> sourceLL = source.toLinkedList();
+        if (techniqueName.equals("arithmetic") && sourceLL.size() < MIN_ARITHMETIC_TOKENS) techniqueName = "huffman";
+        CoderMetrics metrics = CoderMetrics.forTechnique(owner + "-" + techniqueName);
+        switch (techniqueName) {
+            case "huffman":
+                Huffman huffman = new Huffman(sourceLL, source.getEOD(), metrics);
+                huffman.buildTree(2);
+                this.technique = huffman;
+                break;
+            case "arithmetic":
+                this.technique = new Arithmetic(sourceLL, source.getEOD(), metrics);
+                break;
+            default:
+                throw new Exception("Unknown entropy coder: " + techniqueName);
+        }
+    }
+
+    /**
+     * @param token a token which occurs in the tokens the coder was built with
+     * @return the coding of the token
+     */
+    String getCoding(char token) {
+        return this.technique.getCoding(token);
+    }
+
+    /**
+     * @param tokens the same tokens that the coder was built with
+     * @return the coded tokens, terminated by the EOD
+     */
+    String encode(String tokens) {
+        return this.technique.encode(this.eodIsToken ? tokens : tokens + this.eod);
+    }
+
+    /**
+     * @param coded the output of {@link TokenCoder#encode(String)}
+     * @return the tokens, without the EOD
+     */
+    String decode(String coded) {
+        String tokens = this.technique.decode(coded);
+        int end = tokens.indexOf(this.eod);
+        if (end < 0) return tokens;
+        return this.eodIsToken ? tokens.substring(0, end+1) : tokens.substring(0, end);
+    }
+
+    /**
+     * Appends the lowest width bits of value, most significant first.
+     *
+     * @param bits where to append
+     * @param value the number to write
+     * @param width the number of bits to write
+     */
+    static void appendBits(StringBuilder bits, long value, int width) {
+        for (int i = width-1; i >= 0; i--)
+            bits.append((char) ('0' + ((value >>> i) & 1)));
+    }
+
+    /**
+     * Reads a number written by {@link TokenCoder#appendBits(StringBuilder, long, int)}.
+     *
+     * @param bits where to read from
+     * @param from the index of the most significant bit
+     * @param width the number of bits to read
+     * @return the number
+     */
+    static long readBits(CharSequence bits, int from, int width) {
+        long value = 0;
+        for (int i = 0; i < width; i++)
+            value = (value << 1) | (bits.charAt(from+i) - '0');
+        return value;
+    }
+
+    /**
+     * Appends a positive number in the Elias gamma code:
+     * as many zeros as there are bits after the leading one, followed by the number itself.
+     * Small numbers take few bits, which suits lengths and counts.
+     *
+     * @param bits where to append
+     * @param value the number to write, at least 1
+     */
+    static void appendGamma(StringBuilder bits, long value) {
+        int width = Long.SIZE - Long.numberOfLeadingZeros(value);
+        for (int i = 1; i < width; i++) bits.append('0');
+        appendBits(bits, value, width);
+    }
+
+    /**
+     * Reads a number written by {@link TokenCoder#appendGamma(StringBuilder, long)}.
+     *
+     * @param bits where to read from
+     * @param from the index of the first bit
+     * @return the number
+     * @see TokenCoder#gammaLength(long)
+     */
+    static long readGamma(CharSequence bits, int from) {
+        int zeros = 0;
+        while (bits.charAt(from + zeros) == '0') zeros++;
+        return readBits(bits, from + zeros, zeros + 1);
+    }
+
+    /**
+     * @param value a positive number
+     * @return the number of bits in the Elias gamma code of the number
+     */
+    static int gammaLength(long value) {
+        return 2*(Long.SIZE - Long.numberOfLeadingZeros(value)) - 1;
+    }
+
+}
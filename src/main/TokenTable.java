@@ -0,0 +1,126 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * Maps tokens (substrings of a text) to consecutive ids and counts their occurrences.
+ * An open-addressing hash table with linear probing holds the ids,
+ * and the tokens, their hashes and counts are kept in arrays indexed by id.
+ * Lookups take a range of the text, so a {@link String} is only created for new tokens.
+ *
+ * @see WordCoder
+ * @version 1.0
+ * @author 150009974
+ */
+final class TokenTable {
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    /**
+     * Holds id+1 for every used slot and 0 for empty ones.
+     */
+    private int[] slots = new int[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private String[] tokens = new String[INITIAL_CAPACITY];
+    private long[] counts = new long[INITIAL_CAPACITY];
+    private int size = 0;
+
+    private static int hash(CharSequence text, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) h = 31*h + text.charAt(i);
+        h *= 0x9E3779B1;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String token, CharSequence text, int from, int to) {
+        if (token.length() != to - from) return false;
+        for (int i = 0; i < token.length(); i++)
+            if (token.charAt(i) != text.charAt(from + i)) return false;
+        return true;
+    }
+
+    private int slotOf(int h, CharSequence text, int from, int to) {
+        int mask = this.slots.length - 1;
+        int slot = h & mask;
+        while (this.slots[slot] != 0) {
+            int id = this.slots[slot] - 1;
+            if (this.hashes[id] == h && matches(this.tokens[id], text, from, to)) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldSlots = this.slots;
+        this.slots = new int[oldSlots.length << 1];
+        int mask = this.slots.length - 1;
+        for (int id = 0; id < this.size; id++) {
+            int slot = this.hashes[id] & mask;
+            while (this.slots[slot] != 0) slot = (slot + 1) & mask;
+            this.slots[slot] = id + 1;
+        }
+        this.hashes = Arrays.copyOf(this.hashes, this.slots.length);
+        this.tokens = Arrays.copyOf(this.tokens, this.slots.length);
+        this.counts = Arrays.copyOf(this.counts, this.slots.length);
+    }
+
+    /**
+     * Adds to the count of a token, giving it the next id if it is new.
+     *
+     * @param text the text containing the token
+     * @param from the start of the token
+     * @param to the end of the token
+     * @param count how many occurrences to add
+     * @return the id of the token
+     */
+    int add(CharSequence text, int from, int to, long count) {
+        int h = hash(text, from, to);
+        int slot = this.slotOf(h, text, from, to);
+        if (this.slots[slot] == 0) {
+            if ((this.size + 1) * 2 > this.slots.length) {
+                this.grow();
+                slot = this.slotOf(h, text, from, to);
+            }
+            this.hashes[this.size] = h;
+            this.tokens[this.size] = text.subSequence(from, to).toString();
+            this.slots[slot] = ++this.size;
+        }
+        int id = this.slots[slot] - 1;
+        this.counts[id] += count;
+        return id;
+    }
+
+    /**
+     * @param text the text containing the token
+     * @param from the start of the token
+     * @param to the end of the token
+     * @return the id of the token or -1 if it has not been added
+     */
+    int find(CharSequence text, int from, int to) {
+        int slot = this.slotOf(hash(text, from, to), text, from, to);
+        return this.slots[slot] - 1;
+    }
+
+    /**
+     * Adds all the tokens and counts of another table to this one.
+     *
+     * @param other the table to add
+     */
+    void addAll(TokenTable other) {
+        for (int id = 0; id < other.size; id++)
+            this.add(other.tokens[id], 0, other.tokens[id].length(), other.counts[id]);
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    String getToken(int id) {
+        return this.tokens[id];
+    }
+
+    long getCount(int id) {
+        return this.counts[id];
+    }
+
+}
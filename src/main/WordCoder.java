@@ -0,0 +1,227 @@
+package main;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Codes natural language text word by word instead of character by character.
+ * The text is split into tokens: maximal runs of letters and digits (words)
+ * and maximal runs of all other characters (separators).
+ * Each distinct token is a symbol of the alphabet, which can contain millions of symbols,
+ * coded with a canonical Huffman code or with an {@link ArithmeticCoder}.
+ * Tokens are counted in a {@link TokenTable} per chunk of the text, in parallel,
+ * and the tables are merged afterwards.
+ * Unlike {@link Huffman} and {@link Arithmetic}, the model is written in the coded text.
+ * The coded text starts with the dictionary: the number of tokens (32 bits),
+ * then every token in lexicographic order, front coded against the previous one, with its count.
+ * The number of tokens in the text (32 bits) and their codes follow.
+ *
+ * @see TokenTable
+ * @see CanonicalCode
+ * @see ArithmeticCoder
+ * @version 1.0
+ * @author 150009974
+ */
+public class WordCoder extends CompressionTechnique {
+
+    private static final int CHUNK = 1 << 16;
+    private static final int FIELD = Integer.SIZE;
+
+    private final String backEnd;
+
+    /**
+     * @param backEnd "huffman" or "arithmetic"
+     * @throws Exception if the coder is unknown
+     */
+    public WordCoder(String backEnd) throws Exception {
+        if (!backEnd.equals("huffman") && !backEnd.equals("arithmetic"))
+            throw new Exception("Unknown entropy coder: " + backEnd);
+        this.backEnd = backEnd;
+    }
+
+    private static boolean isWordCharacter(char c) {
+        return Character.isLetterOrDigit(c);
+    }
+
+    /**
+     * @param text the text
+     * @param from the start of a token
+     * @return the end of the token which starts at from
+     */
+    static int tokenEnd(CharSequence text, int from) {
+        boolean word = isWordCharacter(text.charAt(from));
+        int to = from + 1;
+        while (to < text.length() && isWordCharacter(text.charAt(to)) == word) to++;
+        return to;
+    }
+
+    /**
+     * @param text the text
+     * @param position any position in the text
+     * @return the first start of a token at or after the position
+     */
+    private static int tokenStart(CharSequence text, int position) {
+        if (position <= 0) return 0;
+        if (position >= text.length()) return text.length();
+        boolean word = isWordCharacter(text.charAt(position - 1));
+        while (position < text.length() && isWordCharacter(text.charAt(position)) == word) position++;
+        return position;
+    }
+
+    /**
+     * Counts the tokens of the text. Chunks of the text are counted in parallel,
+     * each chunk starting at a token boundary.
+     *
+     * @param text the text
+     * @return the tokens and their counts
+     */
+    static TokenTable countTokens(String text) {
+        int chunks = (text.length() + CHUNK - 1) / CHUNK;
+        int[] starts = new int[chunks + 1];
+        for (int c = 0; c <= chunks; c++) starts[c] = tokenStart(text, c * CHUNK);
+
+        TokenTable[] counted = IntStream.range(0, chunks).parallel().mapToObj(c -> {
+            TokenTable table = new TokenTable();
+            for (int from = starts[c], to; from < starts[c+1]; from = to) {
+                to = tokenEnd(text, from);
+                table.add(text, from, to, 1);
+            }
+            return table;
+        }).toArray(TokenTable[]::new);
+
+        TokenTable total = new TokenTable();
+        for (TokenTable table : counted) total.addAll(table);
+        return total;
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int l = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < l && a.charAt(i) == b.charAt(i)) i++;
+        return i;
+    }
+
+    /**
+     * The model which both the encoder and the decoder build from the dictionary.
+     */
+    private class Model {
+
+        final CanonicalCode code;
+        final int[] cumulative;
+
+        Model(long[] counts) {
+            if (backEnd.equals("huffman")) {
+                double[] weights = new double[counts.length];
+                for (int i = 0; i < counts.length; i++) weights[i] = counts[i];
+                this.code = new CanonicalCode(CodeLengths.optimal(weights));
+                this.cumulative = null;
+                return;
+            }
+
+            long total = 0;
+            for (long count : counts) total += count;
+            long limit = ArithmeticCoder.MAX_TOTAL - counts.length;
+            this.cumulative = new int[counts.length + 1];
+            for (int i = 0; i < counts.length; i++) {
+                long count = total <= limit ? counts[i] : Math.max(1, counts[i] * limit / total);
+                this.cumulative[i+1] = this.cumulative[i] + (int) count;
+            }
+            this.code = null;
+        }
+
+    }
+
+    @Override
+    public String getCoding(char symbol) {
+        return "";
+    }
+
+    @Override
+    public String encode(String text) {
+        TokenTable counted = countTokens(text);
+        String[] dictionary = new String[counted.size()];
+        for (int id = 0; id < dictionary.length; id++) dictionary[id] = counted.getToken(id);
+        Arrays.parallelSort(dictionary);
+
+        // Ids in the coded text are positions in the sorted dictionary.
+        TokenTable sorted = new TokenTable();
+        long[] counts = new long[dictionary.length];
+        long tokens = 0;
+        StringBuilder coded = new StringBuilder();
+        TokenCoder.appendBits(coded, dictionary.length, FIELD);
+        for (int i = 0; i < dictionary.length; i++) {
+            String token = dictionary[i];
+            sorted.add(token, 0, token.length(), 0);
+            counts[i] = counted.getCount(counted.find(token, 0, token.length()));
+            tokens += counts[i];
+
+            int prefix = i == 0 ? 0 : commonPrefix(dictionary[i-1], token);
+            TokenCoder.appendGamma(coded, prefix + 1);
+            TokenCoder.appendGamma(coded, token.length() - prefix + 1);
+            for (int j = prefix; j < token.length(); j++)
+                TokenCoder.appendBits(coded, token.charAt(j), Character.SIZE);
+            TokenCoder.appendGamma(coded, counts[i]);
+        }
+        TokenCoder.appendBits(coded, tokens, FIELD);
+
+        Model model = new Model(counts);
+        ArithmeticCoder coder = model.code == null ? ArithmeticCoder.encoder(coded) : null;
+        for (int from = 0, to; from < text.length(); from = to) {
+            to = tokenEnd(text, from);
+            int id = sorted.find(text, from, to);
+            if (coder == null) coded.append(model.code.getCode(id));
+            else coder.encode(model.cumulative[id], model.cumulative[id+1], model.cumulative[counts.length]);
+        }
+        if (coder != null) coder.finish();
+
+        return coded.toString();
+    }
+
+    @Override
+    public String decode(String coded) {
+        int size = (int) TokenCoder.readBits(coded, 0, FIELD);
+        int next = FIELD;
+        String[] dictionary = new String[size];
+        long[] counts = new long[size];
+        for (int i = 0; i < size; i++) {
+            int prefix = (int) TokenCoder.readGamma(coded, next) - 1;
+            next += TokenCoder.gammaLength(prefix + 1);
+            int suffix = (int) TokenCoder.readGamma(coded, next) - 1;
+            next += TokenCoder.gammaLength(suffix + 1);
+
+            StringBuilder token = new StringBuilder(prefix + suffix);
+            if (prefix > 0) token.append(dictionary[i-1], 0, prefix);
+            for (int j = 0; j < suffix; j++, next += Character.SIZE)
+                token.append((char) TokenCoder.readBits(coded, next, Character.SIZE));
+            dictionary[i] = token.toString();
+
+            counts[i] = TokenCoder.readGamma(coded, next);
+            next += TokenCoder.gammaLength(counts[i]);
+        }
+        long tokens = TokenCoder.readBits(coded, next, FIELD);
+        next += FIELD;
+
+        Model model = new Model(counts);
+        StringBuilder text = new StringBuilder();
+        if (model.code != null) {
+            for (long t = 0; t < tokens; t++) {
+                int id = model.code.decode(coded, next);
+                next += model.code.getLength(id);
+                text.append(dictionary[id]);
+            }
+            return text.toString();
+        }
+
+        ArithmeticCoder coder = ArithmeticCoder.decoder(coded, next);
+        int total = model.cumulative[size];
+        for (long t = 0; t < tokens; t++) {
+            int target = coder.getTarget(total);
+            int id = Arrays.binarySearch(model.cumulative, target);
+            id = id >= 0 ? id : -id - 2;
+            coder.decode(model.cumulative[id], model.cumulative[id+1], total);
+            text.append(dictionary[id]);
+        }
+        return text.toString();
+    }
+
+}
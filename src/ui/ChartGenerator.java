@@ -1,29 +1,44 @@
 package ui;
 
 import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.PriorityQueue;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import main.CodingEvents;
 
 /**
  * Contains static methods and fields used to build
- * the HTML document with the JavaScript Chart.
+ * the HTML document with the chart, drawn as inline SVG so that the page needs nothing from the network.
  * Uses final {@link String}s to hold the common HTML elements
- * and various containers for the different data points.
+ * and keeps the data points of every line in primitive arrays, sorted when the chart is written.
+ * Lines other than the default ones are added when their first point is,
+ * and a line can have a dashed upper bound (like a 99th percentile) drawn with it.
+ * Lines whose ID ends with "Time" are drawn against the coding time axis, on the right.
+ * Lines with more than {@link ChartGenerator#MAX_POINTS_PER_LINE} points are downsampled
+ * with the Largest-Triangle-Three-Buckets algorithm, which keeps the peaks and the shape of the line,
+ * and the document is written straight to the file, so millions of points take little memory.
+ * Points can be added from many threads; writing the chart takes the points added so far and clears them.
  *
  * @see ChartGenerator#addDataPoint(String, long, long)
+ * @see ChartGenerator#addDataPoint(String, long, long, long)
  * @see ChartGenerator#DATA_POINTS
+ * @see ChartGenerator#downsample(long[], long[], int, int)
+ * @see SweepRunner
  *
- * @version 1.4
+ * @version 2.0
  * @author 150009974
  */
 class ChartGenerator {
 
     /**
-     * Contains the ids of the lines that will appear in the chart.
-     * The values here are used to iterate over other structures in this class.
+     * Contains the ids of the lines that always appear in the chart, first.
      */
     private static final String[] COLUMN_IDS = {
         "Huffman Length",
@@ -32,6 +47,27 @@ class ChartGenerator {
         "Arithmetic Time",
         "Entropy"
     };
+    /**
+     * The colours of the lines, in order. An upper bound has the colour of its line.
+     */
+    private static final String[] COLOURS = {
+        "#1f77b4", "#ff7f0e", "#2ca02c", "#d62728", "#9467bd",
+        "#8c564b", "#e377c2", "#7f7f7f", "#bcbd22", "#17becf"
+    };
+    /**
+     * More points than the chart has pixels across only make the file larger.
+     */
+    static final int MAX_POINTS_PER_LINE = 1000;
+    /**
+     * Lines with fewer points have every point marked, with its value shown when hovering over it.
+     */
+    private static final int MAX_MARKED_POINTS = 50;
+
+    private static final int WIDTH = 960, HEIGHT = 540;
+    private static final int LEFT = 90, RIGHT = 90, TOP = 20, BOTTOM = 60;
+    private static final int PLOT_WIDTH = WIDTH - LEFT - RIGHT, PLOT_HEIGHT = HEIGHT - TOP - BOTTOM;
+    private static final int TICKS = 6;
+
     /*
      * The contents of this class are ordered in the way they will appear in the HTML page.
      */
@@ -41,135 +77,390 @@ class ChartGenerator {
             "        <title>";
     private static final String AFTER_TITLE = "</title>\n" +
             "        <meta charset=\"utf-8\" />\n" +
-            "        <link href=\"https://cdnjs.cloudflare.com/ajax/libs/c3/0.4.10/c3.min.css\" rel=\"stylesheet\" />\n" +
-            "        <script src=\"https://cdnjs.cloudflare.com/ajax/libs/d3/3.5.6/d3.min.js\"></script>\n" +
-            "        <script src=\"https://cdnjs.cloudflare.com/ajax/libs/c3/0.4.10/c3.min.js\"></script>\n" +
+            "        <style>\n" +
+            "            body { font-family: sans-serif; }\n" +
+            "            svg text { font-size: 11px; fill: #333; }\n" +
+            "            .grid { stroke: #e5e5e5; }\n" +
+            "            .axis { stroke: #333; }\n" +
+            "            .legend span { display: inline-block; margin: 0 16px 4px 0; font-size: 12px; }\n" +
+            "            .legend i { display: inline-block; width: 20px; margin-right: 4px; vertical-align: middle; }\n" +
+            "        </style>\n" +
             "    </head>\n" +
             "    <body>\n" +
-            "        <div id=\"chart\"></div>\n" +
-            "        <script>\n" +
-            "            var chart = c3.generate({\n" +
-            "                data: {\n" +
-            "                    x: 'x',\n" +
-            "                    columns: [\n";
-    private static final PriorityQueue<Long> MESSAGE_LENGTHS = new PriorityQueue<>();
-    /**
-     * Contains a mapping between a Column ID and the data points.
-     * A {@link HashMap}<{@Long}, {@Long}> is used to represent data points
-     * because of the quick access times.
-     *
-     * @see ChartGenerator
-     * @see ChartGenerator#createColumns()
-     */
-    private static final HashMap<String, HashMap<Long, Long>> DATA_POINTS = new HashMap<>();
-    private static final String CLOSE_COLUMNS_ARRAY =
-            "                    ],\n" +
-            "                    axes: {\n";
-    private static final LinkedList<String> BELONGING_AXES = new LinkedList<>();
+            "        <svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + WIDTH + "\" height=\"" + HEIGHT + "\">\n";
+    private static final String CLOSE_SVG =
+            "        </svg>\n" +
+            "        <div class=\"legend\">\n";
     private static final String END =
-            "                    }\n" +
-            "                },\n" +
-            "                axis: {\n" +
-            "                    x: {\n" +
-            "                        label: \"Message Length (bits)\",\n" +
-            "                    },\n" +
-            "                    y: {\n" +
-            "                        label: \"Coded Text Length (bits)\",\n" +
-            "                    },\n" +
-            "                    y2: {\n"+
-            "                        show: true,\n" +
-            "                        label: \"Coding Time (ms)\",\n" +
-            "                    }\n" +
-            "                },\n" +
-            "                zoom: {\n" +
-            "                    enabled: true\n" +
-            "                },\n" +
-            "            });\n" +
-            "        </script>\n" +
+            "        </div>\n" +
             "</body>\n" +
             "</html>";
-    
-    static {
-        for(String id : COLUMN_IDS) {
-            DATA_POINTS.put(id, new HashMap<>());
-            String yOrY2 = id.endsWith("Time") ? "y2" : "y";
-            BELONGING_AXES.addLast("                        \""+id+"\": \""+yOrY2+"\",\n");
+    private static final String X_LABEL = "Message Length (bits)";
+    private static final String Y_LABEL = "Coded Text Length (bits)";
+    private static final String Y2_LABEL = "Coding Time (ms)";
+
+    /**
+     * The points of one line, in the order they were added until {@link Series#sort()}.
+     */
+    private static final class Series {
+
+        private long[] xs = new long[16];
+        private long[] ys = new long[16];
+        private int size = 0;
+        private boolean sorted = true;
+        private boolean dashed = false;
+
+        void add(long x, long y) {
+            if (this.size == this.xs.length) {
+                this.xs = Arrays.copyOf(this.xs, 2 * this.size);
+                this.ys = Arrays.copyOf(this.ys, 2 * this.size);
+            }
+            if (this.size > 0 && x < this.xs[this.size - 1]) this.sorted = false;
+            this.xs[this.size] = x;
+            this.ys[this.size++] = y;
         }
+
+        /**
+         * Orders the points by x. Of the points with the same x, the last one added is kept.
+         */
+        void sort() {
+            if (!this.sorted) {
+                long[] xBuffer = new long[this.size], yBuffer = new long[this.size];
+                mergeSort(this.xs, this.ys, xBuffer, yBuffer, 0, this.size);
+                this.sorted = true;
+            }
+            int kept = 0;
+            for (int i = 0; i < this.size; i++) {
+                if (kept > 0 && this.xs[kept - 1] == this.xs[i]) kept--;
+                this.xs[kept] = this.xs[i];
+                this.ys[kept++] = this.ys[i];
+            }
+            this.size = kept;
+        }
+
+        /**
+         * Sorts xs[from, to) and ys with it, keeping points with the same x in the order they were added.
+         */
+        private static void mergeSort(long[] xs, long[] ys, long[] xBuffer, long[] yBuffer, int from, int to) {
+            if (to - from < 2) return;
+            int middle = (from + to) >>> 1;
+            mergeSort(xs, ys, xBuffer, yBuffer, from, middle);
+            mergeSort(xs, ys, xBuffer, yBuffer, middle, to);
+            if (xs[middle - 1] <= xs[middle]) return;
+
+            System.arraycopy(xs, from, xBuffer, from, to - from);
+            System.arraycopy(ys, from, yBuffer, from, to - from);
+            for (int i = from, left = from, right = middle; i < to; i++) {
+                boolean takeLeft = right == to || (left < middle && xBuffer[left] <= xBuffer[right]);
+                int next = takeLeft ? left++ : right++;
+                xs[i] = xBuffer[next];
+                ys[i] = yBuffer[next];
+            }
+        }
+
+    }
+
+    /**
+     * Contains a mapping between a Column ID and the data points, in the order the lines are drawn.
+     * Guarded by the ChartGenerator class.
+     *
+     * @see ChartGenerator
+     * @see ChartGenerator#writeToFile(String)
+     */
+    private static LinkedHashMap<String, Series> DATA_POINTS = newDataPoints();
+    /**
+     * The suffix of the ID of the line holding the upper bound of another line.
+     *
+     * @see ChartGenerator#addDataPoint(String, long, long, long)
+     */
+    static final String UPPER_BOUND = " p99";
+
+    private static LinkedHashMap<String, Series> newDataPoints() {
+        LinkedHashMap<String, Series> dataPoints = new LinkedHashMap<>();
+        for(String id : COLUMN_IDS)
+            dataPoints.put(id, new Series());
+        return dataPoints;
     }
 
     /**
      * Adds a new data point to the arrays to be displayed.
      * @param lineID The ID (name) of the line to be charted.
-     *               This must be a value in {@link ChartGenerator#COLUMN_IDS}
+     *               A line which is not in {@link ChartGenerator#COLUMN_IDS} is added after them.
      * @param x The x coordinate of the point.
      *          Specifically the length of the text at which lineID passes through y.
      * @param y The y coordinate of the point.
      *          Specifically the value that lineID passes through when the length is x.
+     *          Times are in microseconds.
      */
-    static void addDataPoint(String lineID, long x, long y) {
-        DATA_POINTS.get(lineID).put(x, y);
-        if (!MESSAGE_LENGTHS.contains(x))
-            MESSAGE_LENGTHS.add(x);
+    static synchronized void addDataPoint(String lineID, long x, long y) {
+        DATA_POINTS.computeIfAbsent(lineID, id -> new Series()).add(x, y);
     }
 
     /**
-     * Extracts the data from the containers to build a {@link String},
-     * containing all the data and ready to be put in a JavaScript function call.
+     * Adds a data point with an upper bound, drawn as a dashed line
+     * named lineID + {@link ChartGenerator#UPPER_BOUND} above the line itself.
+     * Together they show the spread of repeated measurements: the median and the 99th percentile.
      *
-     * @see ChartGenerator#DATA_POINTS
-     * @return the String representation of the data.
-     */
-    private static String createColumns() {
-        StringBuilder xs = new StringBuilder("                        ['x',");
-        HashMap<String, StringBuilder> columns = new HashMap<>();
-        for (String id : COLUMN_IDS)
-            columns.put(id, new StringBuilder("                        ['"+id+"',"));
-        
-        while(!MESSAGE_LENGTHS.isEmpty()) {
-            long msgL = MESSAGE_LENGTHS.poll();
-            xs.append(msgL).append(",");
-            columns.forEach((String coding, StringBuilder column) -> {
-                // data corresponding to msgL (can be null, therefor Object Long)
-                Long data = DATA_POINTS.get(coding).get(msgL);
-                
-                if (data != null && coding.endsWith("Time")) 
-                    column.append(data*1.0/1000.0);  // get ms here
-                else column.append(data);
-                column.append(",");
-            });
+     * @param lineID The ID (name) of the line to be charted.
+     * @param x The x coordinate of the point.
+     * @param y The y coordinate of the point, like the median of the measurements.
+     * @param upper The upper bound at x, like the 99th percentile of the measurements.
+     * @see ChartGenerator#addDataPoint(String, long, long)
+     */
+    static synchronized void addDataPoint(String lineID, long x, long y, long upper) {
+        addDataPoint(lineID, x, y);
+        Series bound = DATA_POINTS.computeIfAbsent(lineID + UPPER_BOUND, id -> new Series());
+        bound.add(x, upper);
+        bound.dashed = true;
+    }
+
+    /**
+     * @param boundID the ID of a dashed line, added by {@link ChartGenerator#addDataPoint(String, long, long, long)}
+     * @return the ID of the line it is the upper bound of
+     */
+    private static String boundedLineOf(String boundID) {
+        return boundID.substring(0, boundID.length() - UPPER_BOUND.length());
+    }
+
+    private static boolean isTime(String lineID) {
+        return lineID.endsWith("Time") || lineID.endsWith("Time" + UPPER_BOUND);
+    }
+
+    /**
+     * @return the value to draw, milliseconds for the times which are added in microseconds
+     */
+    private static double valueOf(String lineID, long y) {
+        return isTime(lineID) ? y / 1000.0 : y;
+    }
+
+    /**
+     * Picks the points to draw with the Largest-Triangle-Three-Buckets algorithm (Steinarsson, 2013).
+     * The first and last points are kept, and the others are split into threshold-2 buckets.
+     * From every bucket the point kept is the one making the largest triangle
+     * with the point kept from the previous bucket and the average of the next bucket.
+     *
+     * @param xs the x coordinates, in increasing order
+     * @param ys the y coordinates
+     * @param size the number of points
+     * @param threshold the number of points to keep, at least 3
+     * @return the indexes of the points kept, in increasing order
+     */
+    static int[] downsample(long[] xs, long[] ys, int size, int threshold) {
+        if (size <= threshold || threshold < 3) {
+            int[] all = new int[size];
+            for (int i = 0; i < size; i++) all[i] = i;
+            return all;
         }
-        xs.append("],\n");
-        
-        columns.forEach((String coding, StringBuilder column) -> {
-            column.append("],\n");
-            xs.append(column);
-            // clear data points
-            DATA_POINTS.put(coding, new HashMap<>());
-        });
-        return xs.toString();
-    }
-    
-    private static String concatBelongingAxes() {
-        StringBuilder concatenated = new StringBuilder();
-        for (String axis : BELONGING_AXES)
-            concatenated.append(axis);
-        
-        return concatenated.toString();
-    }
-    
+
+        int[] kept = new int[threshold];
+        double every = (double) (size - 2) / (threshold - 2);
+        int previous = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int nextStart = (int) ((bucket + 1) * every) + 1;
+            int nextEnd = Math.min((int) ((bucket + 2) * every) + 1, size);
+            double averageX = 0, averageY = 0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                averageX += xs[j];
+                averageY += ys[j];
+            }
+            averageX /= nextEnd - nextStart;
+            averageY /= nextEnd - nextStart;
+
+            int start = (int) (bucket * every) + 1;
+            int end = (int) ((bucket + 1) * every) + 1;
+            double previousX = xs[previous], previousY = ys[previous];
+            double largestArea = -1;
+            for (int j = start; j < end; j++) {
+                // Twice the area of the triangle, which is enough to compare.
+                double area = Math.abs((previousX - averageX) * (ys[j] - previousY)
+                        - (previousX - xs[j]) * (averageY - previousY));
+                if (area > largestArea) {
+                    largestArea = area;
+                    kept[bucket + 1] = j;
+                }
+            }
+            previous = kept[bucket + 1];
+        }
+        kept[threshold - 1] = size - 1;
+        return kept;
+    }
+
+    /**
+     * @return a round step between about {@link ChartGenerator#TICKS} ticks over the range: 1, 2 or 5 times a power of 10
+     */
+    private static double tickStep(double range) {
+        double rough = range / TICKS;
+        double power = Math.pow(10, Math.floor(Math.log10(rough)));
+        double fraction = rough / power;
+        return (fraction <= 1 ? 1 : fraction <= 2 ? 2 : fraction <= 5 ? 5 : 10) * power;
+    }
+
+    private static String format(double value, double step) {
+        int decimals = Math.max(0, (int) -Math.floor(Math.log10(step)));
+        return String.format(Locale.ROOT, "%." + decimals + "f", value);
+    }
+
+    /**
+     * @return the coordinate rounded to a tenth of a pixel
+     */
+    private static String pixel(double coordinate) {
+        return Double.toString(Math.round(coordinate * 10) / 10.0);
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    /**
+     * The ranges of the axes, the same for every line against the axis.
+     */
+    private static final class Scale {
+
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double maxY = 0, maxY2 = 0;
+        boolean hasY2 = false;
+
+        void round() {
+            if (this.minX > this.maxX) this.minX = this.maxX = 0;
+            double step = tickStep(this.maxX > this.minX ? this.maxX - this.minX : 1);
+            this.minX = Math.floor(this.minX / step) * step;
+            this.maxX = Math.max(Math.ceil(this.maxX / step) * step, this.minX + step);
+            this.maxY = this.maxY > 0 ? Math.ceil(this.maxY / tickStep(this.maxY)) * tickStep(this.maxY) : 1;
+            this.maxY2 = this.maxY2 > 0 ? Math.ceil(this.maxY2 / tickStep(this.maxY2)) * tickStep(this.maxY2) : 1;
+        }
+
+        double x(double x) {
+            return LEFT + (x - this.minX) / (this.maxX - this.minX) * PLOT_WIDTH;
+        }
+
+        double y(double y, boolean y2) {
+            return TOP + PLOT_HEIGHT - y / (y2 ? this.maxY2 : this.maxY) * PLOT_HEIGHT;
+        }
+
+    }
+
+    private static void writeAxes(Writer writer, Scale scale) throws IOException {
+        int bottom = TOP + PLOT_HEIGHT, right = LEFT + PLOT_WIDTH;
+        double step = tickStep(scale.maxX - scale.minX);
+        for (double x = scale.minX; x <= scale.maxX + step / 2; x += step) {
+            String px = pixel(scale.x(x));
+            writer.write("            <line class=\"grid\" x1=\"" + px + "\" y1=\"" + TOP + "\" x2=\"" + px
+                    + "\" y2=\"" + bottom + "\" />\n");
+            writer.write("            <text x=\"" + px + "\" y=\"" + (bottom + 16) + "\" text-anchor=\"middle\">"
+                    + format(x, step) + "</text>\n");
+        }
+        step = tickStep(scale.maxY);
+        for (double y = 0; y <= scale.maxY + step / 2; y += step) {
+            String py = pixel(scale.y(y, false));
+            writer.write("            <line class=\"grid\" x1=\"" + LEFT + "\" y1=\"" + py + "\" x2=\"" + right
+                    + "\" y2=\"" + py + "\" />\n");
+            writer.write("            <text x=\"" + (LEFT - 6) + "\" y=\"" + py + "\" dy=\"4\" text-anchor=\"end\">"
+                    + format(y, step) + "</text>\n");
+        }
+        writer.write("            <line class=\"axis\" x1=\"" + LEFT + "\" y1=\"" + bottom + "\" x2=\"" + right
+                + "\" y2=\"" + bottom + "\" />\n");
+        writer.write("            <line class=\"axis\" x1=\"" + LEFT + "\" y1=\"" + TOP + "\" x2=\"" + LEFT
+                + "\" y2=\"" + bottom + "\" />\n");
+        writer.write("            <text x=\"" + (LEFT + PLOT_WIDTH / 2) + "\" y=\"" + (HEIGHT - 16)
+                + "\" text-anchor=\"middle\">" + X_LABEL + "</text>\n");
+        writer.write("            <text transform=\"translate(16," + (TOP + PLOT_HEIGHT / 2)
+                + ") rotate(-90)\" text-anchor=\"middle\">" + Y_LABEL + "</text>\n");
+
+        if (!scale.hasY2) return;
+        step = tickStep(scale.maxY2);
+        for (double y = 0; y <= scale.maxY2 + step / 2; y += step)
+            writer.write("            <text x=\"" + (right + 6) + "\" y=\"" + pixel(scale.y(y, true))
+                    + "\" dy=\"4\">" + format(y, step) + "</text>\n");
+        writer.write("            <line class=\"axis\" x1=\"" + right + "\" y1=\"" + TOP + "\" x2=\"" + right
+                + "\" y2=\"" + bottom + "\" />\n");
+        writer.write("            <text transform=\"translate(" + (WIDTH - 16) + "," + (TOP + PLOT_HEIGHT / 2)
+                + ") rotate(90)\" text-anchor=\"middle\">" + Y2_LABEL + "</text>\n");
+    }
+
+    private static void writeLine(Writer writer, Scale scale, String id, Series series, int[] kept, String colour)
+            throws IOException {
+        boolean y2 = isTime(id);
+        writer.write("            <polyline fill=\"none\" stroke=\"" + colour + "\" stroke-width=\"1.5\""
+                + (series.dashed ? " stroke-dasharray=\"6,4\"" : "") + " points=\"");
+        for (int i : kept) {
+            writer.write(pixel(scale.x(series.xs[i])));
+            writer.write(',');
+            writer.write(pixel(scale.y(valueOf(id, series.ys[i]), y2)));
+            writer.write(' ');
+        }
+        writer.write("\"><title>" + escape(id) + "</title></polyline>\n");
+
+        if (kept.length > MAX_MARKED_POINTS) return;
+        for (int i : kept)
+            writer.write("            <circle r=\"2.5\" fill=\"" + colour + "\" cx=\"" + pixel(scale.x(series.xs[i]))
+                    + "\" cy=\"" + pixel(scale.y(valueOf(id, series.ys[i]), y2)) + "\"><title>" + escape(id) + ": "
+                    + series.xs[i] + ", " + valueOf(id, series.ys[i]) + "</title></circle>\n");
+    }
+
+    /**
+     * Writes the chart of the points added so far, and clears them.
+     *
+     * @param filepath the file to write, without the ".html" which is added
+     * @throws IOException if the file can not be written
+     */
     static void writeToFile(String filepath) throws IOException {
-        BufferedWriter writer = new BufferedWriter(new FileWriter(filepath+".html"));
-        writer.write(BEFORE_TITLE);
-
-        int index = filepath.lastIndexOf('/');
-        if (index == -1) writer.write(filepath);
-        else writer.write(filepath.substring(index+1));  // skip '/' when writing title.
-        writer.write(AFTER_TITLE);
-        writer.write(createColumns());
-        writer.write(CLOSE_COLUMNS_ARRAY);
-        writer.write(concatBelongingAxes());
-        writer.write(END);
-        writer.close();
-    }
-    
+        Object event = CodingEvents.beginFileWrite();
+        LinkedHashMap<String, Series> lines;
+        synchronized (ChartGenerator.class) {
+            lines = DATA_POINTS;
+            DATA_POINTS = newDataPoints();
+        }
+
+        Scale scale = new Scale();
+        LinkedHashMap<String, int[]> kept = new LinkedHashMap<>();
+        for (Map.Entry<String, Series> line : lines.entrySet()) {
+            Series series = line.getValue();
+            if (series.size == 0) continue;
+            series.sort();
+            int[] indexes = downsample(series.xs, series.ys, series.size, MAX_POINTS_PER_LINE);
+            kept.put(line.getKey(), indexes);
+
+            boolean y2 = isTime(line.getKey());
+            scale.hasY2 |= y2;
+            scale.minX = Math.min(scale.minX, series.xs[0]);
+            scale.maxX = Math.max(scale.maxX, series.xs[series.size - 1]);
+            for (int i : indexes) {
+                double y = valueOf(line.getKey(), series.ys[i]);
+                if (y2) scale.maxY2 = Math.max(scale.maxY2, y);
+                else scale.maxY = Math.max(scale.maxY, y);
+            }
+        }
+        scale.round();
+
+        // An upper bound has the colour of its line.
+        LinkedHashMap<String, String> colours = new LinkedHashMap<>();
+        for (String id : kept.keySet())
+            if (!lines.get(id).dashed || !kept.containsKey(boundedLineOf(id)))
+                colours.put(id, COLOURS[colours.size() % COLOURS.length]);
+        for (String id : kept.keySet())
+            if (lines.get(id).dashed) colours.putIfAbsent(id, colours.get(boundedLineOf(id)));
+
+        String path = filepath + ".html";
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path),
+                StandardCharsets.UTF_8))) {
+            writer.write(BEFORE_TITLE);
+            int index = filepath.lastIndexOf('/');
+            writer.write(escape(index == -1 ? filepath : filepath.substring(index+1)));  // skip '/' when writing title.
+            writer.write(AFTER_TITLE);
+            writeAxes(writer, scale);
+            for (Map.Entry<String, int[]> line : kept.entrySet())
+                writeLine(writer, scale, line.getKey(), lines.get(line.getKey()), line.getValue(),
+                        colours.get(line.getKey()));
+            writer.write(CLOSE_SVG);
+            for (Map.Entry<String, int[]> line : kept.entrySet()) {
+                String border = lines.get(line.getKey()).dashed ? "dashed" : "solid";
+                writer.write("            <span><i style=\"border-top: 2px " + border + " "
+                        + colours.get(line.getKey()) + "\"></i>" + escape(line.getKey()) + "</span>\n");
+            }
+            writer.write(END);
+        }
+        if (CodingEvents.shouldCommit(event))
+            CodingEvents.commitFileWrite(event, path, new File(path).length());
+    }
+
 }
@@ -2,7 +2,6 @@ package ui;
 
 import java.io.*;
 import java.util.HashMap;
-import java.util.LinkedList;
 import javax.swing.*;
 import main.*;
 import org.apache.pdfbox.io.RandomAccessFile;
@@ -15,7 +14,7 @@ import static ui.GUI.LENGTH_EQUALS_STRINGS;
  * Handler functions triggered when the user interacts with the GUI.
  * Separate from the GUI class for better readability.
  *
- * @version 3.6
+ * @version 3.8
  * @author 150009974
  */
 class Handlers {
@@ -24,7 +23,6 @@ class Handlers {
     private static final int PARSE_FAILED = -1;
     
     private static InformationSource source = new InformationSource();
-    private static LinkedList<InformationSourceEntry> sourceLL;
     private static String inputText = "";
     private static double entropy;
     
@@ -34,6 +32,7 @@ class Handlers {
      */
     private static HashMap<Character, String> guiListEntries = new HashMap<>();
     
+    private static final CoderCache coders = new CoderCache();
     private static CompressionTechnique huffmanUsed;
     private static CompressionTechnique arithmeticUsed;
     
@@ -50,9 +49,6 @@ class Handlers {
     }
     
     private static void updateFields(GUI gui) {
-        // source linked list
-        sourceLL = source.toLinkedList();
-
         // Entropy
         if (source.size() == 0) {
             gui.getEntropyLabel().setText("Entropy = ");
@@ -204,7 +200,7 @@ class Handlers {
             int length = Integer.parseInt(gui.getRandomTextLengthTextField().getText());
             if (length < 0) throw new NumberFormatException("Negative Value!");
             
-            gui.getInputTextTextArea().setText(source.generateText(sourceLL, length));
+            gui.getInputTextTextArea().setText(source.generateText(length));
         }
         catch (NumberFormatException nfe) {
             JOptionPane.showMessageDialog(gui,
@@ -241,6 +237,7 @@ class Handlers {
         
         if (filepath.endsWith(".pdf")) {
             // Apache PDF parser
+            Object event = CodingEvents.beginFileRead();
             try {
                 PDFParser parser = new PDFParser(new RandomAccessFile(new File(filepath), "r"));
                 parser.parse();
@@ -253,6 +250,7 @@ class Handlers {
                 gui.getInputTextTextArea().setText(pdfText);
                 
                 pddoc.close();
+                commitFileRead(event, filepath, pdfText.length());
             }
             catch (IOException ioe) {
                 ioe.printStackTrace();
@@ -271,6 +269,8 @@ class Handlers {
                                             "Open File Information",
                                             JOptionPane.INFORMATION_MESSAGE);
             
+            // Timed after the dialog, which waits for the user.
+            Object event = CodingEvents.beginFileRead();
             try {
                 BufferedReader reader = new BufferedReader(new FileReader(filepath));
                 JTextArea textA = gui.getInputTextTextArea();
@@ -279,6 +279,7 @@ class Handlers {
                 for (int c = reader.read(); c != -1; c = reader.read())
                     textA.append(""+(char)c);
 
+                commitFileRead(event, filepath, textA.getDocument().getLength());
             }
             catch (IOException ioe) {
                 ioe.printStackTrace();
@@ -291,12 +292,20 @@ class Handlers {
         
     }
     
+    /**
+     * Records a file read, only once it succeeded.
+     */
+    private static void commitFileRead(Object event, String filepath, int characters) {
+        if (CodingEvents.shouldCommit(event))
+            CodingEvents.commitFileRead(event, filepath, new File(filepath).length(),
+                    characters, filepath.endsWith(".pdf"));
+    }
+    
     private static void estimateInformationSource(GUI gui) {
         String text = gui.getInputTextTextArea().getText();
         source = InformationSource.estimateFromText(text);
         DefaultListModel lmodel = gui.getInformationSourceEntriesListModel();
 
-        /** {@link Handlers#sourceLL} has not been updated yet. */
         for (InformationSourceEntry entry : source.toLinkedList()) {
             guiListEntries.put(entry.getSymbol(), entry.toHTML());
             lmodel.addElement(guiListEntries.get(entry.getSymbol()));
@@ -361,18 +370,8 @@ class Handlers {
         String encoded;
         long start, end;
         try {
-            switch (techniqueName) {
-                case "arithmetic":
-                    encoding = new Arithmetic(sourceLL, source.getEOD());
-                    break;
-                case "huffman":
-                    encoding = new Huffman(sourceLL, source.getEOD());
-                    ((Huffman)encoding).buildTree(base);
-                    break;
-                default:
-                    System.err.println("Static technique names should be found: " + techniqueName);
-                    throw new Exception("Trying to use unknown coding!");
-            }
+            // Only built when the model, technique or base changed since it was last used.
+            encoding = coders.get(source, techniqueName, base);
             
             start = System.nanoTime();
             encoded = encoding.encode(inputText);
@@ -0,0 +1,122 @@
+package ui;
+
+import java.io.File;
+import java.util.Arrays;
+import main.*;
+import util.WorkloadGenerator;
+
+/**
+ * Builds the same chart as the GUI, without the GUI, over a list of message lengths.
+ * For every length a text is generated from a probs.txt file
+ * (with an unused character as the EOD if the file has none), and every technique
+ * codes it a few times to warm up and then a number of measured times.
+ * The median and the 99th percentile of the encoding and decoding times are charted,
+ * with the lengths of the coded text and of the entropy, against the length of the message.
+ * Usage: SweepRunner PROBS_FILE OUTPUT_FILE LENGTHS [ITERATIONS] [WARM_UP] [SEED]
+ * where LENGTHS is a comma separated list like 100,1000,10000,
+ * and OUTPUT_FILE is written with ".html" added, like {@link Handlers#saveToFile(GUI)} does.
+ * The {@link CoderMetrics} of the run are printed at the end.
+ *
+ * @see ChartGenerator#addDataPoint(String, long, long, long)
+ * @version 1.0
+ * @author 150009974
+ */
+class SweepRunner {
+
+    private static final int DEFAULT_ITERATIONS = 20;
+    private static final int DEFAULT_WARM_UP = 5;
+    private static final String[] TECHNIQUES = {"huffman", "arithmetic"};
+
+    private static String capitalizeFirst(String line) {
+        return Character.toUpperCase(line.charAt(0)) + line.substring(1);
+    }
+
+    /**
+     * @param sorted measurements in increasing order
+     * @param p the fraction of the measurements at or below the percentile
+     * @return the nearest-rank percentile
+     */
+    private static long percentile(long[] sorted, double p) {
+        int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * Codes a text with one technique and charts the results.
+     *
+     * @param technique the coder
+     * @param name the name of the technique, like in {@link GUI#LENGTH_EQUALS_STRINGS}
+     * @param text the text to code
+     * @param iterations the number of measured runs
+     * @param warmUp the number of runs before measuring
+     * @throws Exception if decoding does not give back the text
+     */
+    private static void sweep(CompressionTechnique technique, String name, String text, int iterations, int warmUp)
+            throws Exception {
+        long[] encodeMicros = new long[iterations];
+        long[] decodeMicros = new long[iterations];
+        String coded = "";
+        for (int i = -warmUp; i < iterations; i++) {
+            long start = System.nanoTime();
+            coded = technique.encode(text);
+            long middle = System.nanoTime();
+            String decoded = technique.decode(coded);
+            long end = System.nanoTime();
+            if (!decoded.equals(text))
+                throw new Exception(capitalizeFirst(name) + " did not decode a text of " + text.length() + " characters!");
+            if (i >= 0) {
+                encodeMicros[i] = (middle - start) / 1000;
+                decodeMicros[i] = (end - middle) / 1000;
+            }
+        }
+        Arrays.sort(encodeMicros);
+        Arrays.sort(decodeMicros);
+
+        // The same units as Handlers: bits of the message and of the code, microseconds.
+        long textLengthInBits = (long) text.length() * Character.BYTES * 8;
+        String line = capitalizeFirst(name);
+        ChartGenerator.addDataPoint(line + " Length", textLengthInBits, coded.length());
+        ChartGenerator.addDataPoint(line + " Time", textLengthInBits,
+                percentile(encodeMicros, 0.5), percentile(encodeMicros, 0.99));
+        ChartGenerator.addDataPoint(line + " Decode Time", textLengthInBits,
+                percentile(decodeMicros, 0.5), percentile(decodeMicros, 0.99));
+        System.err.println(String.format("%-12s%10d characters: encode %8d us (p99 %8d), decode %8d us (p99 %8d)",
+                name, text.length(), percentile(encodeMicros, 0.5), percentile(encodeMicros, 0.99),
+                percentile(decodeMicros, 0.5), percentile(decodeMicros, 0.99)));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: SweepRunner PROBS_FILE OUTPUT_FILE LENGTHS [ITERATIONS] [WARM_UP] [SEED]");
+            System.exit(1);
+        }
+        InformationSource source = WorkloadGenerator.readProbabilities(new File(args[0]));
+        String output = args[1];
+        int[] lengths = Arrays.stream(args[2].split(",")).mapToInt(length -> Integer.parseInt(length.trim())).toArray();
+        int iterations = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_ITERATIONS;
+        int warmUp = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_WARM_UP;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 0;
+        if (iterations < 1) throw new Exception("At least one iteration is needed!");
+
+        if (source.getEOD() == null) {
+            // Arithmetic coding needs an EOD: use the first character which is not a symbol.
+            char eod = 0;
+            while (source.getEntryFor(eod) != null) eod++;
+            source.setEOD(eod);
+            System.err.println("No EOD in " + args[0] + ", using character " + (int) eod + ".");
+        }
+        CoderCache coders = new CoderCache();
+        double entropy = source.calculateEntropy(2);
+        for (int length : lengths) {
+            // Ends with the EOD.
+            String text = source.generateText(length, seed);
+            long textLengthInBits = (long) text.length() * Character.BYTES * 8;
+            ChartGenerator.addDataPoint("Entropy", textLengthInBits, (long) (text.length() * entropy));
+            for (String name : TECHNIQUES)
+                sweep(coders.get(source, name, 2), name, text, iterations, warmUp);
+        }
+        ChartGenerator.writeToFile(output);
+        System.err.print(CoderMetrics.dump());
+    }
+
+}
@@ -0,0 +1,217 @@
+package util;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import main.*;
+
+/**
+ * Benchmarks the coders and the model builders, on the corpora in the statistics directory
+ * and on synthetic sources of 3 to 65536 symbols.
+ * Every measurement first runs the operation for a warm-up period, so that the JIT compiler has finished,
+ * then runs it repeatedly for a measurement period and reports:
+ * the throughput in MB/s of input (2 bytes per character, as in the GUI),
+ * the mean, median and 99th percentile latency of one operation,
+ * and the allocation rate, from the bytes allocated by the benchmarking thread.
+ * Results are consumed by a volatile sink, so that the JIT compiler can not remove the work.
+ * Everything runs offline, from the files in the statistics directory.
+ * Usage: Benchmark [statistics directory] [text length] [seconds per measurement] [seed]
+ *
+ * @see CorpusComparison
+ * @see RegressionCheck
+ */
+public class Benchmark {
+
+    private static final String DEFAULT_DIRECTORY = "statistics";
+    private static final int DEFAULT_LENGTH = 100000;
+    private static final double DEFAULT_SECONDS = 0.5;
+    private static final int[] SYNTHETIC_SIZES = {3, 16, 256, 4096, 65536};
+    private static final int N_ARY_BASE = 4;
+    /**
+     * {@link Arithmetic} searches its entries linearly for every symbol, so larger alphabets take too long.
+     */
+    private static final int ARITHMETIC_MAX_ALPHABET = 4096;
+
+    private static volatile int sink;
+
+    interface Operation {
+
+        Object run() throws Exception;
+
+    }
+
+    /**
+     * The durations of the measured runs, and the bytes they allocated.
+     */
+    static final class Result {
+
+        final long[] nanos;
+        final long allocated;
+
+        Result(long[] nanos, long allocated) {
+            this.nanos = nanos;
+            this.allocated = allocated;
+        }
+
+        double totalSeconds() {
+            long total = 0;
+            for (long n : this.nanos) total += n;
+            return total / 1e9;
+        }
+
+        double percentileMicros(double p) {
+            long[] sorted = this.nanos.clone();
+            Arrays.sort(sorted);
+            return sorted[(int) Math.min(sorted.length - 1, Math.floor(p * sorted.length))] / 1e3;
+        }
+
+    }
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * @return the bytes allocated by this thread so far, or -1 if the JVM does not count them
+     */
+    private static long allocatedBytes() {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean)) return -1;
+        return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static Result measure(Operation operation, double seconds) throws Exception {
+        long warmUpEnd = System.nanoTime() + (long) (seconds * 1e9);
+        do sink ^= System.identityHashCode(operation.run());
+        while (System.nanoTime() < warmUpEnd);
+
+        long[] nanos = new long[1024];
+        int runs = 0;
+        long allocatedBefore = allocatedBytes();
+        long end = System.nanoTime() + (long) (seconds * 1e9);
+        for (long now = System.nanoTime(); runs == 0 || now < end; ) {
+            Object result = operation.run();
+            long after = System.nanoTime();
+            sink ^= System.identityHashCode(result);
+            if (runs == nanos.length) nanos = Arrays.copyOf(nanos, 2 * runs);
+            nanos[runs++] = after - now;
+            now = after;
+        }
+        long allocatedAfter = allocatedBytes();
+        return new Result(Arrays.copyOf(nanos, runs), allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore);
+    }
+
+    private static void report(String name, long inputBytes, Result result) {
+        double seconds = result.totalSeconds();
+        String allocation = result.allocated < 0 ? String.format("%12s%12s", "n/a", "n/a") :
+                String.format("%12.1f%12d", result.allocated / seconds / 1e6, result.allocated / result.nanos.length);
+        System.out.println(String.format("\t%-22s%8d%10.2f%12.1f%12.1f%12.1f%s", name, result.nanos.length,
+                inputBytes * result.nanos.length / seconds / 1e6,
+                seconds * 1e6 / result.nanos.length, result.percentileMicros(0.5), result.percentileMicros(0.99),
+                allocation));
+    }
+
+    private static void benchmark(String corpus, InformationSource source, String text, double seconds)
+            throws Exception {
+        SourceSnapshot model = source.snapshot();
+        int symbols = model.size() + (model.hasEOD() ? 1 : 0);
+        System.out.println(corpus + " (" + symbols + " symbols, " + text.length() + " characters)");
+        System.out.println(String.format("\t%-22s%8s%10s%12s%12s%12s%12s%12s", "operation", "runs", "MB/s",
+                "mean us", "p50 us", "p99 us", "alloc MB/s", "alloc B/op"));
+        long textBytes = (long) text.length() * Character.BYTES;
+        long modelBytes = (long) symbols * Character.BYTES;
+
+        report("estimate source", textBytes, measure(() -> InformationSource.estimateFromText(text), seconds));
+        report("build huffman", modelBytes, measure(() -> {
+            Huffman huffman = new Huffman(model);
+            huffman.buildTree(2);
+            return huffman;
+        }, seconds));
+        report("build huffman n=" + N_ARY_BASE, modelBytes, measure(() -> {
+            Huffman huffman = new Huffman(model);
+            huffman.buildTree(N_ARY_BASE);
+            return huffman;
+        }, seconds));
+
+        for (int base : new int[] {2, N_ARY_BASE}) {
+            Huffman huffman = new Huffman(model);
+            huffman.buildTree(base);
+            String coded = huffman.encode(text);
+            report("huffman n=" + base + " encode", textBytes, measure(() -> huffman.encode(text), seconds));
+            report("huffman n=" + base + " decode", textBytes, measure(() -> huffman.decode(coded), seconds));
+        }
+
+        if (model.hasEOD() && symbols <= ARITHMETIC_MAX_ALPHABET) {
+            report("build arithmetic", modelBytes, measure(() -> new Arithmetic(model), seconds));
+            // Arithmetic stops decoding at the End Of Data symbol.
+            char eod = model.getEOD().getSymbol();
+            String message = text.isEmpty() || text.charAt(text.length() - 1) != eod ? text + eod : text;
+            Arithmetic arithmetic = new Arithmetic(model);
+            String coded = arithmetic.encode(message);
+            report("arithmetic encode", textBytes, measure(() -> arithmetic.encode(message), seconds));
+            report("arithmetic decode", textBytes, measure(() -> arithmetic.decode(coded), seconds));
+        }
+    }
+
+    /**
+     * @param size the number of symbols, the last one being the EOD
+     * @param random where the weights come from
+     * @return a source with random probabilities
+     * @throws Exception if the source can not be built
+     */
+    private static InformationSource synthetic(int size, Random random) throws Exception {
+        double[] weights = new double[size - 1];
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            // Skewed, like the letters of a text.
+            weights[i] = Math.pow(random.nextDouble(), 4) + 1e-6;
+            total += weights[i];
+        }
+        InformationSource source = new InformationSource();
+        for (int i = 0; i < weights.length; i++) source.addEntry((char) i, weights[i] / total);
+        source.setEOD((char) (size - 1));
+        return source;
+    }
+
+    /**
+     * @param corpus a directory of the statistics directory
+     * @param length the most characters to take
+     * @param seed for generating the text when the corpus only has probabilities
+     * @return the start of the corpus text file, or a text generated from its probs.txt, or null if it has neither
+     * @throws Exception if the files can not be read
+     */
+    static String corpusText(File corpus, int length, long seed) throws Exception {
+        File textFile = new File(corpus, corpus.getName() + ".txt");
+        File probs = new File(corpus, "probs.txt");
+        if (textFile.isFile()) {
+            String text = new String(Files.readAllBytes(textFile.toPath()));
+            return text.substring(0, Math.min(length, text.length()));
+        }
+        if (probs.isFile()) return WorkloadGenerator.readProbabilities(probs).generateText(length, seed);
+        return null;
+    }
+
+    public static void main(String[] args) throws Exception {
+        File directory = new File(args.length > 0 ? args[0] : DEFAULT_DIRECTORY);
+        int length = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_LENGTH;
+        double seconds = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_SECONDS;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+        File[] corpora = directory.listFiles(File::isDirectory);
+        if (corpora == null) throw new Exception("Not a directory: " + directory);
+        Arrays.sort(corpora);
+
+        for (File corpus : corpora) {
+            String text = corpusText(corpus, length, seed);
+            if (text == null) continue;
+            benchmark(corpus.getName(), InformationSource.estimateFromText(text), text, seconds);
+        }
+
+        Random random = new Random(seed);
+        for (int size : SYNTHETIC_SIZES) {
+            InformationSource source = synthetic(size, random);
+            benchmark("synthetic", source, source.generateText(length, seed), seconds);
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+package util;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import main.*;
+
+/**
+ * Compares the compression techniques on the corpora in the statistics directory.
+ * A corpus with a text file (like "gadsby") is compared on the start of that text,
+ * the others are compared on a text generated from their probs.txt file
+ * with {@link WorkloadGenerator#readProbabilities(File)}.
+ * For each technique, the length of the coded text, the bits per character,
+ * the encoding and decoding times and whether decoding gave back the text are printed.
+ * The transform stages are also checked on a few short texts,
+ * which give their entropy coders empty or one-symbol models.
+ * Usage: CorpusComparison [statistics directory] [text length] [seed]
+ */
+public class CorpusComparison {
+
+    private static final String DEFAULT_DIRECTORY = "statistics";
+    /**
+     * {@link Arithmetic} takes quadratic time in the length of the text.
+     */
+    private static final int DEFAULT_LENGTH = 10000;
+    private static final String[] BACK_ENDS = {"huffman", "arithmetic"};
+    private static final String[] SHORT_TEXTS = {"", "a", "aa", "aaaaaaaa", "ab", "\0", "\0\0"};
+
+    private static void compare(String name, String text, CompressionTechnique technique, String message) {
+        long start = System.nanoTime();
+        String coded, decoded;
+        try {
+            coded = technique.encode(message);
+        }
+        catch (RuntimeException ex) {
+            System.out.println(String.format("\t%-16s encoding FAILED: %s", name, ex));
+            return;
+        }
+        long middle = System.nanoTime();
+        try {
+            decoded = technique.decode(coded);
+        }
+        catch (RuntimeException ex) {
+            System.out.println(String.format("\t%-16s decoding FAILED: %s", name, ex));
+            return;
+        }
+        long end = System.nanoTime();
+        System.out.println(String.format("\t%-16s%12d%10.3f%12.2f%12.2f\t%s", name,
+                coded.length(), 1.0 * coded.length() / Math.max(1, text.length()),
+                (middle - start) / 1e6, (end - middle) / 1e6, decoded.equals(message) ? "ok" : "FAILED"));
+    }
+
+    /**
+     * Codes the text with every transform stage and back end.
+     */
+    private static void compareTransforms(String text) throws Exception {
+        for (String backEnd : BACK_ENDS) {
+            compare("lzss " + backEnd, text, new LZSS(backEnd), text);
+            compare("bwt " + backEnd, text, new BWT(backEnd), text);
+        }
+    }
+
+    private static void compareAll(String corpus, String text) throws Exception {
+        System.out.println(corpus + " (" + text.length() + " characters)");
+        System.out.println(String.format("\t%-16s%12s%10s%12s%12s", "technique", "bits", "bits/char", "encode ms", "decode ms"));
+
+        InformationSource source = InformationSource.estimateFromText(text);
+        Huffman huffman = new Huffman(source.toLinkedList(), source.getEOD());
+        huffman.buildTree(2);
+        compare("huffman", text, huffman, text);
+        if (source.getEOD() != null) {
+            // Arithmetic stops decoding at the End Of Data symbol.
+            char eod = source.getEOD().getSymbol();
+            String message = text.isEmpty() || text.charAt(text.length() - 1) != eod ? text + eod : text;
+            compare("arithmetic", text, new Arithmetic(source.toLinkedList(), source.getEOD()), message);
+        }
+        compare("binary", text, new BinaryArithmetic(), text);
+        compare("ppm", text, new PPM(PPM.MAX_ORDER), text);
+        compare("context mixing", text, new ContextMixing(), text);
+        compareTransforms(text);
+    }
+
+    public static void main(String[] args) throws Exception {
+        File directory = new File(args.length > 0 ? args[0] : DEFAULT_DIRECTORY);
+        int length = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_LENGTH;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+
+        File[] corpora = directory.listFiles(File::isDirectory);
+        if (corpora == null) throw new Exception("Not a directory: " + directory);
+        Arrays.sort(corpora);
+
+        for (File corpus : corpora) {
+            File textFile = new File(corpus, corpus.getName() + ".txt");
+            File probs = new File(corpus, "probs.txt");
+            String text;
+            if (textFile.isFile()) {
+                text = new String(Files.readAllBytes(textFile.toPath()));
+                text = text.substring(0, Math.min(length, text.length()));
+            }
+            else if (probs.isFile()) text = WorkloadGenerator.readProbabilities(probs).generateText(length, seed);
+            else continue;
+            compareAll(corpus.getName(), text);
+        }
+
+        for (String text : SHORT_TEXTS) {
+            System.out.println("\"" + text.replace("\0", "\\0") + "\" (" + text.length() + " characters)");
+            compareTransforms(text);
+        }
+    }
+
+}
@@ -0,0 +1,278 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import main.*;
+
+/**
+ * Records the performance of the coders on the corpora in the statistics directory to a baseline file,
+ * and compares later runs against it, so that a slower {@link Huffman} or {@link Arithmetic} is noticed
+ * before it is used.
+ * For every corpus and technique the latencies of many encode and decode runs are kept
+ * (measured like {@link Benchmark} does), with the length of the code and of the text coded.
+ * A latency regresses when its median is more than the threshold slower than in the baseline
+ * and the Mann-Whitney U test finds the runs slower with p below {@link RegressionCheck#ALPHA},
+ * so that noise in a few runs is not reported. The code length regresses when it is more than the threshold longer.
+ * The throughput (of the text actually coded, which can be shorter than asked for) and the 99th percentile are printed too.
+ * The exit status is 1 if anything regressed, so the check can be scripted.
+ * Latencies only compare between runs on the same, otherwise idle, machine.
+ * Usage: RegressionCheck record BASELINE_FILE [statistics directory] [text length] [seconds] [seed]
+ *    or: RegressionCheck compare BASELINE_FILE [threshold %] [statistics directory]
+ * A comparison uses the text length, seconds and seed of the baseline.
+ *
+ * @see Benchmark
+ */
+public class RegressionCheck {
+
+    private static final String DEFAULT_DIRECTORY = "statistics";
+    private static final int DEFAULT_LENGTH = 10000;
+    private static final double DEFAULT_SECONDS = 1.0;
+    private static final double DEFAULT_THRESHOLD = 5.0;
+    /**
+     * The significance level of the test: a slower median with a higher p value is taken as noise.
+     */
+    private static final double ALPHA = 0.01;
+    private static final String[] TECHNIQUES = {"huffman", "arithmetic"};
+    private static final String ENCODE = "encode", DECODE = "decode", SIZE = "size", CHARACTERS = "chars";
+
+    /**
+     * The measurements of one run, by "corpus\ttechnique\tmetric", in the order they were made.
+     * Latencies are in nanoseconds, sizes in digits of the code, and the characters coded
+     * (with the EOD that {@link Arithmetic} needs) are kept for the throughput.
+     */
+    private static final class Run {
+
+        int length;
+        double seconds = DEFAULT_SECONDS;
+        long seed;
+        final LinkedHashMap<String, long[]> samples = new LinkedHashMap<>();
+
+        void write(File file) throws IOException {
+            try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+                writer.println("# Written by RegressionCheck, " + System.getProperty("java.version")
+                        + " on " + System.getProperty("os.arch"));
+                writer.println("length\t" + this.length);
+                writer.println("seconds\t" + this.seconds);
+                writer.println("seed\t" + this.seed);
+                for (Map.Entry<String, long[]> entry : this.samples.entrySet()) {
+                    StringBuilder line = new StringBuilder(entry.getKey()).append('\t');
+                    for (long value : entry.getValue()) line.append(value).append(',');
+                    line.setLength(line.length() - 1);
+                    writer.println(line);
+                }
+            }
+        }
+
+        static Run read(File file) throws Exception {
+            Run run = new Run();
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    if (line.isEmpty() || line.startsWith("#")) continue;
+                    String[] fields = line.split("\t");
+                    if (fields.length == 2 && fields[0].equals("length")) run.length = Integer.parseInt(fields[1]);
+                    else if (fields.length == 2 && fields[0].equals("seconds")) run.seconds = Double.parseDouble(fields[1]);
+                    else if (fields.length == 2 && fields[0].equals("seed")) run.seed = Long.parseLong(fields[1]);
+                    else if (fields.length == 4)
+                        run.samples.put(fields[0] + "\t" + fields[1] + "\t" + fields[2],
+                                Arrays.stream(fields[3].split(",")).mapToLong(Long::parseLong).toArray());
+                    else throw new Exception("Not a baseline line: " + line + "!");
+                }
+            }
+            if (run.length <= 0) throw new Exception("The baseline " + file + " has no text length!");
+            return run;
+        }
+
+    }
+
+    /**
+     * Measures every technique on the text of every corpus.
+     *
+     * @throws Exception if a coder does not decode its code
+     */
+    private static Run measure(File directory, int length, double seconds, long seed) throws Exception {
+        File[] corpora = directory.listFiles(File::isDirectory);
+        if (corpora == null) throw new Exception("Not a directory: " + directory);
+        Arrays.sort(corpora);
+
+        Run run = new Run();
+        run.length = length;
+        run.seconds = seconds;
+        run.seed = seed;
+        for (File corpus : corpora) {
+            String text = Benchmark.corpusText(corpus, length, seed);
+            if (text == null) continue;
+            SourceSnapshot model = InformationSource.estimateFromText(text).snapshot();
+            for (String technique : TECHNIQUES) {
+                CompressionTechnique coder;
+                String message = text;
+                if (technique.equals("huffman")) {
+                    Huffman huffman = new Huffman(model);
+                    huffman.buildTree(2);
+                    coder = huffman;
+                }
+                else {
+                    if (!model.hasEOD()) continue;
+                    coder = new Arithmetic(model);
+                    // Arithmetic stops decoding at the End Of Data symbol.
+                    char eod = model.getEOD().getSymbol();
+                    if (text.isEmpty() || text.charAt(text.length() - 1) != eod) message = text + eod;
+                }
+                String input = message;
+                String coded = coder.encode(input);
+                if (!coder.decode(coded).equals(input))
+                    throw new Exception(technique + " did not decode " + corpus.getName() + "!");
+
+                String key = corpus.getName() + "\t" + technique + "\t";
+                System.err.println("Measuring " + corpus.getName() + " " + technique + "...");
+                run.samples.put(key + ENCODE, Benchmark.measure(() -> coder.encode(input), seconds).nanos);
+                run.samples.put(key + DECODE, Benchmark.measure(() -> coder.decode(coded), seconds).nanos);
+                run.samples.put(key + SIZE, new long[] {coded.length()});
+                run.samples.put(key + CHARACTERS, new long[] {input.length()});
+            }
+        }
+        return run;
+    }
+
+    /**
+     * @return the bytes of the text coded for the key, 2 per character as in the GUI
+     */
+    private static double bytes(Run run, String[] key) {
+        long[] characters = run.samples.get(key[0] + "\t" + key[1] + "\t" + CHARACTERS);
+        return 2.0 * (characters != null ? characters[0] : run.length);
+    }
+
+    private static double percentile(long[] samples, double p) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(p * sorted.length))];
+    }
+
+    /**
+     * The standard normal distribution function, from the approximation of erf
+     * in Abramowitz and Stegun 7.1.26, accurate to about 1e-7.
+     */
+    private static double normalDistribution(double z) {
+        double x = Math.abs(z) / Math.sqrt(2);
+        double t = 1 / (1 + 0.3275911 * x);
+        double erf = 1 - t * (0.254829592 + t * (-0.284496736 + t * (1.421413741
+                + t * (-1.453152027 + t * 1.061405429)))) * Math.exp(-x * x);
+        return z >= 0 ? (1 + erf) / 2 : (1 - erf) / 2;
+    }
+
+    /**
+     * The one-sided Mann-Whitney U test, with the normal approximation corrected for ties.
+     *
+     * @param current the latencies of the new run
+     * @param baseline the latencies of the baseline
+     * @return the probability of the current latencies ranking this high if they were no slower
+     */
+    static double mannWhitney(long[] current, long[] baseline) {
+        int n1 = current.length, n2 = baseline.length, n = n1 + n2;
+        long[] all = new long[n];
+        System.arraycopy(current, 0, all, 0, n1);
+        System.arraycopy(baseline, 0, all, n1, n2);
+        long[] sorted = all.clone();
+        Arrays.sort(sorted);
+
+        // Average rank of every value, and the tie correction.
+        double rankSum = 0, ties = 0;
+        long[] sortedCurrent = current.clone();
+        Arrays.sort(sortedCurrent);
+        for (int i = 0, c = 0; i < n; ) {
+            int j = i;
+            while (j < n && sorted[j] == sorted[i]) j++;
+            double rank = (i + 1 + j) / 2.0;
+            int inCurrent = 0;
+            while (c < n1 && sortedCurrent[c] == sorted[i]) { c++; inCurrent++; }
+            rankSum += rank * inCurrent;
+            double t = j - i;
+            ties += t * t * t - t;
+            i = j;
+        }
+
+        double u = rankSum - n1 * (n1 + 1) / 2.0;
+        double mean = n1 * (double) n2 / 2;
+        double variance = n1 * (double) n2 / 12 * ((n + 1) - ties / ((double) n * (n - 1)));
+        if (variance <= 0) return 1.0;
+        double z = (u - mean - 0.5) / Math.sqrt(variance);
+        return 1 - normalDistribution(z);
+    }
+
+    /**
+     * Prints the comparison of every measurement in both runs.
+     *
+     * @return the number of regressions
+     */
+    private static int compare(Run baseline, Run current, double threshold) {
+        int regressions = 0;
+        System.out.println(String.format("%-10s%-12s%-8s%12s%12s%10s%12s%12s%10s%10s%10s",
+                "corpus", "technique", "metric", "base p50", "base p99", "base MB/s",
+                "now p50", "now p99", "now MB/s", "change", "p"));
+        for (Map.Entry<String, long[]> entry : current.samples.entrySet()) {
+            long[] before = baseline.samples.get(entry.getKey());
+            String[] key = entry.getKey().split("\t");
+            if (key[2].equals(CHARACTERS)) continue;
+            if (before == null) {
+                System.out.println(String.format("%-10s%-12s%-8s not in the baseline", key[0], key[1], key[2]));
+                continue;
+            }
+            long[] now = entry.getValue();
+            boolean regressed;
+            if (key[2].equals(SIZE)) {
+                double change = 100.0 * (now[0] - before[0]) / Math.max(1, before[0]);
+                regressed = change > threshold;
+                System.out.println(String.format("%-10s%-12s%-8s%12d%22s%12d%22s%+9.1f%%%10s%s",
+                        key[0], key[1], key[2], before[0], "", now[0], "", change, "",
+                        regressed ? "  REGRESSION" : ""));
+            }
+            else {
+                double beforeMedian = percentile(before, 0.5), nowMedian = percentile(now, 0.5);
+                double change = 100.0 * (nowMedian - beforeMedian) / beforeMedian;
+                double p = mannWhitney(now, before);
+                regressed = change > threshold && p < ALPHA;
+                System.out.println(String.format("%-10s%-12s%-8s%12.1f%12.1f%10.2f%12.1f%12.1f%10.2f%+9.1f%%%10.4f%s",
+                        key[0], key[1], key[2] + " us", beforeMedian / 1e3, percentile(before, 0.99) / 1e3,
+                        bytes(baseline, key) / beforeMedian * 1e3, nowMedian / 1e3, percentile(now, 0.99) / 1e3,
+                        bytes(current, key) / nowMedian * 1e3, change, p, regressed ? "  REGRESSION" : ""));
+            }
+            if (regressed) regressions++;
+        }
+        return regressions;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || !(args[0].equals("record") || args[0].equals("compare"))) {
+            System.err.println("Usage: RegressionCheck record BASELINE_FILE [statistics directory] [text length] [seconds] [seed]");
+            System.err.println("   or: RegressionCheck compare BASELINE_FILE [threshold %] [statistics directory]");
+            System.exit(1);
+        }
+        File baselineFile = new File(args[1]);
+
+        if (args[0].equals("record")) {
+            File directory = new File(args.length > 2 ? args[2] : DEFAULT_DIRECTORY);
+            int length = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_LENGTH;
+            double seconds = args.length > 4 ? Double.parseDouble(args[4]) : DEFAULT_SECONDS;
+            long seed = args.length > 5 ? Long.parseLong(args[5]) : 0;
+            measure(directory, length, seconds, seed).write(baselineFile);
+            System.err.println("Baseline written to " + baselineFile + ".");
+            return;
+        }
+
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+        File directory = new File(args.length > 3 ? args[3] : DEFAULT_DIRECTORY);
+        Run baseline = Run.read(baselineFile);
+        Run current = measure(directory, baseline.length, baseline.seconds, baseline.seed);
+        int regressions = compare(baseline, current, threshold);
+        System.out.println(regressions == 0 ? "No regressions over " + threshold + "%."
+                : regressions + " regressions over " + threshold + "%!");
+        if (regressions > 0) System.exit(1);
+    }
+
+}
@@ -0,0 +1,166 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import main.InformationSource;
+import main.MarkovSource;
+
+/**
+ * Generates reproducible texts for load testing, of any length, straight to a file or stream.
+ * The text is drawn from a probs.txt file (one "symbol TAB percentage%" line per symbol,
+ * and optionally a "symbol TAB EOD" line), from the character frequencies of a corpus,
+ * or from an order-k {@link MarkovSource} estimated from a corpus.
+ * The same source, length and seed always give the same text.
+ * Usage: WorkloadGenerator (-probs FILE | -corpus FILE | -markov K FILE) LENGTH SEED [OUTPUT FILE]
+ * The text is written to the standard output if no output file is given.
+ *
+ * @see InformationSource#writeText(long, long, Writer)
+ * @see MarkovSource#writeText(long, long, Writer)
+ */
+public class WorkloadGenerator {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Reads a probs.txt file. The percentages are scaled to add up to 100%.
+     * Lines which are neither an entry nor an EOD (like the total) are skipped.
+     *
+     * @param probs the file
+     * @return the {@link InformationSource} described by the file
+     * @throws Exception if the file can not be read or has no entries
+     */
+    public static InformationSource readProbabilities(File probs) throws Exception {
+        ArrayList<Character> symbols = new ArrayList<>();
+        ArrayList<Double> percentages = new ArrayList<>();
+        Character eod = null;
+        double total = 0;
+        BufferedReader reader = new BufferedReader(new FileReader(probs));
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            int tab = line.indexOf('\t');
+            if (tab != 1) continue;
+            String value = line.substring(tab + 1).trim();
+            if (value.equals("EOD")) eod = line.charAt(0);
+            else if (value.endsWith("%")) {
+                symbols.add(line.charAt(0));
+                percentages.add(Double.parseDouble(value.substring(0, value.length() - 1)));
+                total += percentages.get(percentages.size() - 1);
+            }
+        }
+        reader.close();
+        if (symbols.isEmpty()) throw new Exception("No probabilities in " + probs + "!");
+
+        InformationSource source = new InformationSource();
+        for (int i = 0; i < symbols.size(); i++) source.addEntry(symbols.get(i), percentages.get(i) / total);
+        if (eod != null) source.setEOD(eod);
+        return source;
+    }
+
+    /**
+     * Counts the characters of a corpus, reading it in blocks so that it can be larger than memory.
+     * Unlike {@link InformationSource#estimateFromText(String)}, no EOD is added,
+     * so the probabilities add up to 1 and texts can be generated from the source.
+     *
+     * @param corpus the file
+     * @return the {@link InformationSource} with the frequencies of the characters of the corpus
+     * @throws Exception if the file can not be read or is empty
+     */
+    public static InformationSource estimateFromCorpus(File corpus) throws Exception {
+        long[] counts = new long[Character.MAX_VALUE + 1];
+        long length = 0;
+        char[] buffer = new char[BUFFER_SIZE];
+        Reader reader = new FileReader(corpus);
+        for (int read = reader.read(buffer); read >= 0; read = reader.read(buffer)) {
+            for (int i = 0; i < read; i++) counts[buffer[i]]++;
+            length += read;
+        }
+        reader.close();
+        if (length == 0) throw new Exception("The corpus " + corpus + " is empty!");
+
+        InformationSource source = new InformationSource();
+        for (int symbol = 0; symbol < counts.length; symbol++)
+            if (counts[symbol] != 0) source.addEntry((char) symbol, 1.0 * counts[symbol] / length);
+        return source;
+    }
+
+    /**
+     * Writes a generated text, encoded in UTF-8.
+     *
+     * @param source the source to draw from
+     * @param length the length of the text without the EOD
+     * @param seed the seed
+     * @param out where to write the text, not closed
+     * @throws Exception if the probabilities do not add up to 1 or writing fails
+     */
+    public static void generate(InformationSource source, long length, long seed, OutputStream out) throws Exception {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        source.writeText(length, seed, writer);
+        writer.flush();
+    }
+
+    /**
+     * Writes a text generated by a Markov source, encoded in UTF-8.
+     *
+     * @param source the source to draw from
+     * @param length the length of the text
+     * @param seed the seed
+     * @param out where to write the text, not closed
+     * @throws Exception if writing fails
+     */
+    public static void generate(MarkovSource source, long length, long seed, OutputStream out) throws Exception {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        source.writeText(length, seed, writer);
+        writer.flush();
+    }
+
+    /**
+     * Estimates a Markov source from a corpus, which has to fit in memory.
+     *
+     * @param corpus the file
+     * @param order the number of characters in a context
+     * @return the {@link MarkovSource} with the transition frequencies of the corpus
+     * @throws Exception if the file can not be read or is not longer than the order
+     */
+    public static MarkovSource estimateMarkovFromCorpus(File corpus, int order) throws Exception {
+        return MarkovSource.estimate(new String(Files.readAllBytes(corpus.toPath())), order);
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean markov = args.length > 0 && args[0].equals("-markov");
+        int next = markov ? 3 : 2;
+        if (args.length < next + 2 || !(markov || args[0].equals("-probs") || args[0].equals("-corpus"))) {
+            System.err.println("Usage: WorkloadGenerator (-probs FILE | -corpus FILE | -markov K FILE) LENGTH SEED [OUTPUT FILE]");
+            System.exit(1);
+        }
+        File input = new File(args[next - 1]);
+        long length = Long.parseLong(args[next]);
+        long seed = Long.parseLong(args[next + 1]);
+        OutputStream out = args.length > next + 2 ? new FileOutputStream(args[next + 2]) : System.out;
+
+        long start = System.nanoTime();
+        if (markov) {
+            MarkovSource source = estimateMarkovFromCorpus(input, Integer.parseInt(args[1]));
+            System.err.println(String.format("Order %d: %d contexts, %d transitions, entropy rate %.3f bits",
+                    source.getOrder(), source.getContextCount(), source.getTransitionCount(), source.entropyRate(2)));
+            generate(source, length, seed, out);
+        }
+        else {
+            InformationSource source = args[0].equals("-probs") ? readProbabilities(input) : estimateFromCorpus(input);
+            generate(source, length, seed, out);
+        }
+        if (out != System.out) out.close();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.println(String.format("%d characters in %.2f s (%.1f M characters/s)",
+                length, seconds, length / seconds / 1e6));
+    }
+
+}